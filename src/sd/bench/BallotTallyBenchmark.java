@@ -0,0 +1,73 @@
+import java.util.SplittableRandom;
+
+/**
+ * BallotTallyBenchmark.java
+ * Measures the memory and the recount time of ballots kept in a BallotStore (packed, SWAR count)
+ * against ballots kept as VotingParties references in a MyArrayList and counted one at a time by
+ * ElectionResults.processVotes. The list holds at most LIST_LIMIT ballots, a reference each.
+ * Parties are drawn at random with the run seed, so both stores hold the same ballots and every
+ * count is checked against the counts kept while they were added.
+ *
+ * Usage: java -Xmx1g BallotTallyBenchmark [ballots] [rounds]   (default 1000000000 5)
+ */
+public class BallotTallyBenchmark {
+    private static final int LIST_LIMIT = 50_000_000;
+    private static final VotingParties[] PARTIES = VotingParties.values();
+
+    public static void main(String[] args) {
+        long ballots = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000_000L;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        SplittableRandom random = new SplittableRandom(RunSeed.get());
+        BallotStore store = new BallotStore();
+        long[] expected = new long[PARTIES.length];
+        long start = System.nanoTime();
+        for (long i = 0; i < ballots; i++) {
+            int party = random.nextInt(PARTIES.length);
+            expected[party]++;
+            store.add(PARTIES[party]);
+        }
+        System.out.printf("Stored %d ballots in %.1f s, %d bits each, %.1f MB%n",
+                ballots, (System.nanoTime() - start) / 1e9, BallotStore.BITS, store.getAllocatedBytes() / 1048576.0);
+
+        for (int round = 0; round < rounds; round++) { // the first rounds include the JIT compiling the count
+            start = System.nanoTime();
+            long[] counts = store.count();
+            long nanos = System.nanoTime() - start;
+            check("BallotStore", counts, expected);
+            System.out.printf("BallotStore recount %d: %.1f ms, %.3f ns per ballot%n", round + 1, nanos / 1e6, (double) nanos / ballots);
+        }
+
+        store = null;
+        int listSize = (int) Math.min(ballots, LIST_LIMIT);
+        random = new SplittableRandom(RunSeed.get()); // same ballots, the first listSize of them
+        long[] listExpected = new long[PARTIES.length];
+        MyArrayList<VotingParties> list = new MyArrayList<>();
+        for (int i = 0; i < listSize; i++) {
+            int party = random.nextInt(PARTIES.length);
+            listExpected[party]++;
+            list.add(PARTIES[party]);
+        }
+        for (int round = 0; round < rounds; round++) {
+            ElectionResults results = new ElectionResults();
+            start = System.nanoTime();
+            results.processVotes(list);
+            long nanos = System.nanoTime() - start;
+            long[] counts = new long[PARTIES.length];
+            for (int p = 0; p < PARTIES.length; p++) {
+                counts[p] = results.get(PARTIES[p]);
+            }
+            check("MyArrayList", counts, listExpected);
+            System.out.printf("MyArrayList recount %d of %d ballots: %.1f ms, %.3f ns per ballot%n",
+                    round + 1, listSize, nanos / 1e6, (double) nanos / listSize);
+        }
+    }
+
+    private static void check(String name, long[] counts, long[] expected) {
+        for (int p = 0; p < PARTIES.length; p++) {
+            if (counts[p] != expected[p]) {
+                throw new IllegalStateException(name + " counted " + counts[p] + " votes for " + PARTIES[p] + ", expected " + expected[p]);
+            }
+        }
+    }
+}
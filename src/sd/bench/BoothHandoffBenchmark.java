@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * BoothHandoffBenchmark.java
+ * Measures wakeups and context switches per vote when N voters are already queued at the booth.
+ * Compares the ticket handoff in VotingBooth with the previous wait/notifyAll monitor protocol.
+ * Voting time is disabled (speed multiplier 0) so only the synchronization is measured.
+ * Context switches are read from /proc (Linux only), while every voter thread is still alive.
+ *
+ * Usage: java BoothHandoffBenchmark [queuedVoters...]   (default 10 1000 100000)
+ */
+public class BoothHandoffBenchmark {
+    // wait/notifyAll costs O(n) wakeups per vote, beyond this it would run for hours
+    private static final int MONITOR_LIMIT = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10, 1_000, 100_000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        Logger logger = Logger.getInstance("bench-log.txt");
+        logger.startAsync(1 << 16, 1024, 100, Logger.OverflowPolicy.DROP);
+        SimulationClock.set(SimulationClock.zeroDelay()); // measure the handoff, not the voting time
+
+        System.out.printf("%-10s %10s %12s %14s %14s %12s%n", "protocol", "voters", "time (ms)", "wakeups/vote", "ctx sw/vote", "votes/s");
+        for (int n : sizes) {
+            run("ticket", n);
+            if (n <= MONITOR_LIMIT) {
+                run("notifyAll", n);
+            } else {
+                System.out.printf("%-10s %10d %12s%n", "notifyAll", n, "skipped");
+            }
+        }
+        logger.close();
+    }
+
+    private static void run(String protocol, int n) throws Exception {
+        VotingBooth booth = new VotingBooth();
+        MonitorBooth monitorBooth = new MonitorBooth();
+        boolean ticket = protocol.equals("ticket");
+
+        CountDownLatch done = new CountDownLatch(n);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread[] threads = new Thread[n];
+        long switchesBefore = contextSwitches();
+
+        // queue everyone first so the booth sees the full depth
+        for (int i = 0; i < n; i++) {
+            Voter voter = new Voter(i + 1, null, null, 0, 0);
+            Runnable vote;
+            if (ticket) {
+                VotingBooth.Ticket t = booth.enterBoothQueue(voter);
+                vote = () -> {
+                    booth.castVote(voter, t);
+                    booth.exitBoothQueue();
+                };
+            } else {
+                monitorBooth.enterBoothQueue(voter);
+                vote = () -> {
+                    monitorBooth.castVote(voter);
+                    monitorBooth.exitBoothQueue();
+                };
+            }
+            threads[i] = new Thread(() -> {
+                vote.run();
+                done.countDown();
+                try {
+                    release.await(); // stay alive so /proc still lists this thread
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        long switches = contextSwitches() - switchesBefore;
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long wakeups = ticket ? booth.getWakeups() : monitorBooth.wakeups;
+        System.out.printf("%-10s %10d %12.1f %14.2f %14.2f %12.0f%n", protocol, n, elapsed / 1e6,
+                (double) wakeups / n, switches < 0 ? Double.NaN : (double) switches / n, n / (elapsed / 1e9));
+    }
+
+    /**
+     * Sum of voluntary and involuntary context switches of every live thread of this process
+     * @return switches, or -1 if /proc is not available
+     */
+    private static long contextSwitches() {
+        Path tasks = Paths.get("/proc/self/task");
+        if (!Files.isDirectory(tasks)) {
+            return -1;
+        }
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tasks)) {
+            for (Path task : stream) {
+                try {
+                    for (String line : Files.readAllLines(task.resolve("status"))) {
+                        if (line.startsWith("voluntary_ctxt_switches") || line.startsWith("nonvoluntary_ctxt_switches")) {
+                            total += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                } catch (IOException e) {
+                    // thread exited while reading
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return total;
+    }
+
+    /**
+     * The booth protocol before the ticket handoff: every state change wakes every queued voter
+     */
+    private static class MonitorBooth {
+        private final GenericFIFO<Voter> boothQueue = new GenericFIFO<>();
+        private long wakeups;
+
+        synchronized void castVote(Voter voter) {
+            while (boothQueue.front() != voter) {
+                try {
+                    wait();
+                    wakeups++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        synchronized void enterBoothQueue(Voter voter) {
+            boothQueue.enQueue(voter);
+            notifyAll();
+        }
+
+        synchronized Voter exitBoothQueue() {
+            Voter v = boothQueue.deQueue();
+            notifyAll();
+            return v;
+        }
+    }
+}
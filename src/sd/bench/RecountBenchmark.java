@@ -0,0 +1,76 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * RecountBenchmark.java
+ * Measures the fork-join Recount of a multi-station election against the same recount on a single
+ * thread. Every station's ballots are stored by its own thread, with a StripedVoteCounter counting
+ * them as the booths do, and each recount is checked against the LiveTally of those counters.
+ * At the end one counter is given a vote without a ballot, to show the mismatch being reported.
+ *
+ * Usage: java -Xmx1200m RecountBenchmark [stations] [ballotsPerStation] [rounds]   (default 8 100000000 5)
+ */
+public class RecountBenchmark {
+    private static final VotingParties[] PARTIES = VotingParties.values();
+
+    public static void main(String[] args) throws InterruptedException {
+        int numStations = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        long perStation = args.length > 1 ? Long.parseLong(args[1]) : 100_000_000L;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        BallotStore[] stores = new BallotStore[numStations];
+        StripedVoteCounter[] counters = new StripedVoteCounter[numStations];
+        Thread[] threads = new Thread[numStations];
+        SplittableRandom seed = new SplittableRandom(RunSeed.get());
+        long start = System.nanoTime();
+        for (int s = 0; s < numStations; s++) {
+            BallotStore store = new BallotStore();
+            StripedVoteCounter counter = new StripedVoteCounter();
+            SplittableRandom random = seed.split();
+            stores[s] = store;
+            counters[s] = counter;
+            threads[s] = new Thread(() -> {
+                for (long i = 0; i < perStation; i++) {
+                    VotingParties party = PARTIES[random.nextInt(PARTIES.length)];
+                    counter.record(party);
+                    store.add(party);
+                }
+            });
+            threads[s].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.printf("Stored %d stations x %d ballots in %.1f s%n", numStations, perStation, (System.nanoTime() - start) / 1e9);
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool common = ForkJoinPool.commonPool();
+        double singleMillis = 0;
+        double commonMillis = 0;
+        for (int round = 0; round < rounds; round++) { // the first rounds include the JIT compiling the count
+            singleMillis = run("1 thread", stores, counters, single);
+            commonMillis = run("common pool", stores, counters, common);
+        }
+        System.out.printf("Speed-up on %d cores: %.2fx%n", Runtime.getRuntime().availableProcessors(), singleMillis / commonMillis);
+        single.shutdown();
+
+        counters[numStations - 1].record(PARTIES[0]); // a vote counted without its ballot
+        run("common pool", stores, counters, common);
+    }
+
+    private static double run(String name, BallotStore[] stores, StripedVoteCounter[] counters, ForkJoinPool pool) {
+        Recount recount = Recount.count(stores, pool);
+        double millis = recount.getNanos() / 1e6;
+        int mismatches = 0;
+        for (int s = 0; s < stores.length; s++) {
+            String difference = recount.compare(s, new LiveTally(new StripedVoteCounter[]{counters[s]}).snapshot());
+            if (!difference.isEmpty()) {
+                System.out.println("  station " + (s + 1) + " doesn't match its tally:" + difference);
+                mismatches++;
+            }
+        }
+        System.out.printf("%-12s %d ballots in %d shards: %.1f ms (%.1f M ballots/s), %d mismatches%n",
+                name, recount.getTotal(), recount.getNumShards(), millis, recount.getTotal() / millis / 1000, mismatches);
+        return millis;
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * ThreadModeBenchmark.java
+ * Measures startup time and memory per voter for N voters parked the way voters wait for the
+ * polling station to open, on platform threads or on virtual threads (ActorThreads).
+ * Memory is reported both as Java heap (after GC) and as process RSS from /proc (Linux only),
+ * since platform thread stacks live outside the heap. Run one mode per JVM so they don't mix:
+ *
+ *   java -cp build ThreadModeBenchmark platform 10000
+ *   java -cp build ThreadModeBenchmark virtual 1000000      (Java 21+)
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        ActorThreads.Mode mode = args.length > 0 ? ActorThreads.Mode.valueOf(args[0].toUpperCase()) : ActorThreads.Mode.VIRTUAL;
+        int voters = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        ActorThreads.setMode(mode);
+        Logger.getInstance("bench-log.txt");
+
+        CountDownLatch stationOpen = new CountDownLatch(1);
+        CountDownLatch parked = new CountDownLatch(voters);
+        Thread[] threads = new Thread[voters];
+
+        long heapBefore = usedHeap();
+        long rssBefore = residentSetSize();
+        long start = System.nanoTime();
+        int started = 0;
+        try {
+            for (; started < voters; started++) {
+                Voter voter = new Voter(started + 1, null, null, 0.6, 0.2);
+                threads[started] = ActorThreads.newThread(() -> {
+                    parked.countDown();
+                    try {
+                        stationOpen.await(); // every voter parks until the station opens
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (voter.getVoterId() < 0) System.out.println(voter);
+                });
+                threads[started].start();
+            }
+        } catch (OutOfMemoryError e) {
+            System.out.println("Could only start " + started + " " + mode + " threads: " + e.getMessage());
+            for (int i = started; i < voters; i++) {
+                parked.countDown();
+            }
+        }
+        parked.await();
+        long startup = System.nanoTime() - start;
+        long heap = usedHeap() - heapBefore;
+        long rss = rssBefore < 0 ? -1 : residentSetSize() - rssBefore;
+
+        stationOpen.countDown();
+        long drainStart = System.nanoTime();
+        for (int i = 0; i < started; i++) {
+            threads[i].join();
+        }
+        long drain = System.nanoTime() - drainStart;
+
+        System.out.printf("mode=%s voters=%d%n", mode, started);
+        System.out.printf("  startup        %10.1f ms (%.2f us/voter)%n", startup / 1e6, startup / 1e3 / Math.max(1, started));
+        System.out.printf("  wake and exit  %10.1f ms%n", drain / 1e6);
+        System.out.printf("  heap           %10.1f MB (%d bytes/voter)%n", heap / 1048576.0, heap / Math.max(1, started));
+        if (rss >= 0) {
+            System.out.printf("  RSS            %10.1f MB (%d bytes/voter)%n", rss / 1048576.0, rss / Math.max(1, started));
+        }
+        Logger.getInstance("bench-log.txt").close();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Resident set size of this process in bytes, or -1 if /proc is not available
+     */
+    private static long residentSetSize() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException e) {
+            // not Linux
+        }
+        return -1;
+    }
+}
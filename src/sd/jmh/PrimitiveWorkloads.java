@@ -0,0 +1,314 @@
+import java.util.concurrent.atomic.LongAdder;
+
+import primitives.Workload;
+
+/**
+ * PrimitiveWorkloads.java
+ * The workloads of PrimitivesBenchmark, one nested class per primitive. They live in the default
+ * package with the simulation, the benchmark loads them by name (see Workload). Every benchmark
+ * thread does whole operations on its own, so no operation can wait for a thread JMH already stopped:
+ * a Desk or ExitPoll operation lets a voter in and takes one out.
+ */
+public final class PrimitiveWorkloads {
+    private static final VotingParties[] PARTIES = VotingParties.values();
+    private static final int LIST_SIZE = 1 << 16; // lists are cleared at this size, so an iteration can't run out of memory
+    private static final int BURST = 64;          // voters arriving at a queue together
+
+    private static boolean configured;
+
+    private PrimitiveWorkloads() {
+    }
+
+    /**
+     * Log asynchronously and disable the service times, once per JVM. Loading a workload doesn't
+     * initialize this class, so it is called by every workload
+     */
+    private static synchronized void configure() {
+        if (configured) {
+            return;
+        }
+        configured = true;
+        Logger.getInstance("bench-log.txt").startAsync(1 << 16, 1024, 100, Logger.OverflowPolicy.DROP);
+        SimulationClock.set(SimulationClock.zeroDelay()); // measure the synchronization, not the service times
+    }
+
+    /**
+     * Base of the workloads, without shared state unless they set it up.
+     */
+    private abstract static class Base implements Workload {
+        private Base() {
+            configure();
+        }
+
+        @Override
+        public void setUp(int... params) {
+        }
+
+        @Override
+        public Object newThread(int index) {
+            return null;
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+        }
+    }
+
+    /**
+     * MyArrayList.
+     * add, on a list of the thread's own.
+     */
+    public static final class MyArrayListWorkload extends Base {
+        @Override
+        public Object newThread(int index) {
+            return new MyArrayList<Integer>();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run(Object thread) {
+            MyArrayList<Integer> list = (MyArrayList<Integer>) thread;
+            if (list.size() == LIST_SIZE) {
+                list.clear();
+            }
+            list.add(list.size() & 127); // small boxed values are cached, only the list allocates
+        }
+    }
+
+    /**
+     * GenericFIFO.
+     * enQueue or deQueue, in bursts, on a queue of the thread's own.
+     */
+    public static final class GenericFIFOWorkload extends Base {
+        private static final class Burst {
+            private final GenericFIFO<Integer> fifo = new GenericFIFO<>();
+            private int step;
+        }
+
+        @Override
+        public Object newThread(int index) {
+            return new Burst();
+        }
+
+        @Override
+        public void run(Object thread) {
+            Burst burst = (Burst) thread;
+            if (burst.step++ < BURST) {
+                burst.fifo.enQueue(1);
+            } else {
+                burst.fifo.deQueue();
+                if (burst.step == 2 * BURST) {
+                    burst.step = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * ElectionResults.
+     * increment, on results of the thread's own.
+     */
+    public static final class ElectionResultsWorkload extends Base {
+        private static final class Counting {
+            private final ElectionResults results = new ElectionResults();
+            private int next;
+        }
+
+        @Override
+        public Object newThread(int index) {
+            return new Counting();
+        }
+
+        @Override
+        public void run(Object thread) {
+            Counting counting = (Counting) thread;
+            counting.results.increment(PARTIES[counting.next++ & (PARTIES.length - 1)]);
+        }
+    }
+
+    /**
+     * StripedVoteCounter.
+     * record, on one counter shared by every thread.
+     */
+    public static final class StripedVoteCounterWorkload extends Base {
+        private StripedVoteCounter votes;
+
+        @Override
+        public void setUp(int... params) {
+            votes = new StripedVoteCounter();
+        }
+
+        @Override
+        public Object newThread(int index) {
+            return new int[]{index};
+        }
+
+        @Override
+        public void run(Object thread) {
+            int[] next = (int[]) thread;
+            votes.record(PARTIES[next[0]++ & (PARTIES.length - 1)]);
+        }
+
+        @Override
+        public void tearDown() {
+            ElectionResults results = new ElectionResults();
+            results.processVotes(votes); // the clerk's merge at the end of the election
+        }
+    }
+
+    /**
+     * VotingBooth.
+     * enterBoothQueue, castVote and exitBoothQueue, at one booth shared by every thread.
+     */
+    public static final class VotingBoothWorkload extends Base {
+        private VotingBooth booth;
+
+        @Override
+        public void setUp(int... params) {
+            booth = new VotingBooth();
+        }
+
+        @Override
+        public Object newThread(int index) {
+            return new Voter(index + 1, null, null, 0, 0);
+        }
+
+        @Override
+        public void run(Object thread) {
+            Voter voter = (Voter) thread;
+            VotingBooth.Ticket ticket = booth.enterBoothQueue(voter);
+            booth.castVote(voter, ticket);
+            booth.exitBoothQueue();
+        }
+    }
+
+    /**
+     * Desk.
+     * A voter enters the desk queue and a voter is taken out of it, at one station shared by every thread.
+     */
+    public static final class DeskWorkload extends Base {
+        private PollingStation station;
+        private Desk desk;
+
+        @Override
+        public void setUp(int... params) {
+            station = new PollingStation(1024, Integer.MAX_VALUE, null, 0);
+            desk = station.getDesk();
+            station.open();
+        }
+
+        @Override
+        public Object newThread(int index) {
+            return new Voter(index + 1, null, null, 0, 0);
+        }
+
+        @Override
+        public void run(Object thread) {
+            desk.enterDeskQueue((Voter) thread, station);
+            desk.exitDeskQueue(); // never waits, the caller's own voter is in the queue or was taken by a thread that queued its own
+            desk.doneChecking();
+            station.decrementCurrentVoters(); // lets the next voter in
+        }
+
+        @Override
+        public void tearDown() {
+            station.close();
+        }
+    }
+
+    /**
+     * ExitPoll.
+     * A voter is added to and a voter is drained from one exit poll shared by every thread.
+     */
+    public static final class ExitPollWorkload extends Base {
+        private ExitPoll exitPoll;
+        private final LongAdder added = new LongAdder();
+        private final LongAdder drained = new LongAdder();
+
+        private static final class Leaving {
+            private final Voter voter;
+            private final MyArrayList<Voter> batch = new MyArrayList<>();
+
+            private Leaving(Voter voter) {
+                this.voter = voter;
+            }
+        }
+
+        @Override
+        public void setUp(int... params) {
+            exitPoll = new ExitPoll();
+        }
+
+        @Override
+        public Object newThread(int index) {
+            return new Leaving(new Voter(index + 1, null, null, 0, 0));
+        }
+
+        @Override
+        public void run(Object thread) throws InterruptedException {
+            Leaving leaving = (Leaving) thread;
+            exitPoll.addVoter(leaving.voter);
+            added.increment();
+            leaving.batch.clear();
+            drained.add(exitPoll.drainTo(leaving.batch, 1, 0));
+        }
+
+        @Override
+        public void tearDown() throws InterruptedException {
+            MyArrayList<Voter> rest = new MyArrayList<>();
+            drained.add(exitPoll.drainTo(rest, Integer.MAX_VALUE, 0));
+            if (drained.sum() != added.sum()) {
+                throw new IllegalStateException("exit poll lost voters: " + drained.sum() + " of " + added.sum());
+            }
+        }
+    }
+
+    /**
+     * Election.
+     * A whole polling station, set up like Main does for one station with one clerk and one booth,
+     * until the voter limit. Parameters: capacity, voters, limit.
+     */
+    public static final class ElectionWorkload extends Base {
+        private int capacity;
+        private int numVoters;
+        private int voterLimit;
+
+        @Override
+        public void setUp(int... params) {
+            capacity = params[0];
+            numVoters = params[1];
+            voterLimit = params[2];
+        }
+
+        @Override
+        public void run(Object thread) throws InterruptedException {
+            ElectionResults electionResults = new ElectionResults();
+            PollClerk pollClerk = new PollClerk(null, 1, electionResults);
+            PollingStation station = new PollingStation(capacity, voterLimit, pollClerk, numVoters);
+            ExitPoll exitPoll = new ExitPoll();
+            pollClerk.setPollingStationToClerk(station);
+            Pollster pollster = new Pollster(exitPoll, 0.8, station, pollClerk, voterLimit);
+
+            Thread[] voters = new Thread[numVoters];
+            for (int i = 0; i < numVoters; i++) {
+                voters[i] = new Thread(new Voter(i + 1, station, exitPoll, 0.6, 0.2));
+                voters[i].start();
+            }
+            Thread clerk = new Thread(pollClerk);
+            Thread pollsterThread = new Thread(pollster);
+            clerk.start();
+            pollsterThread.start();
+            clerk.join();
+            pollsterThread.join();
+            for (Thread voter : voters) {
+                voter.interrupt(); // voters still looping after the station closed, as in headless Main
+            }
+            for (Thread voter : voters) {
+                voter.join();
+            }
+            if (electionResults.getTotal() != voterLimit) {
+                throw new IllegalStateException("counted " + electionResults.getTotal() + " votes, expected " + voterLimit);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package primitives;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * PrimitivesBenchmark.java
+ * JMH benchmarks of the queueing and synchronization primitives (MyArrayList, GenericFIFO,
+ * ElectionResults, StripedVoteCounter, VotingBooth, Desk and ExitPoll), and of a whole polling
+ * station at several capacities. Service times are disabled (zero-delay clock), so only the data
+ * structures and their locks are measured, including the logging they do.
+ * The number of threads is JMH's (-t), allocation per operation comes from its GC profiler (-prof gc).
+ *
+ * Usage: gradle jmh -PjmhArgs="-t 4 -prof gc -rf json"
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PrimitivesBenchmark {
+
+    /**
+     * Primitive.
+     * The primitive under test, shared by the benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Primitive {
+        @Param({"MyArrayList", "GenericFIFO", "ElectionResults", "StripedVoteCounter", "VotingBooth", "Desk", "ExitPoll"})
+        public String workload;
+
+        private Workload primitive;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            primitive = Workload.load(workload);
+            primitive.setUp();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            primitive.tearDown();
+        }
+    }
+
+    /**
+     * Caller.
+     * What one benchmark thread keeps between operations (its voter, its own list...).
+     */
+    @State(Scope.Thread)
+    public static class Caller {
+        private Object state;
+
+        @Setup(Level.Trial)
+        public void setUp(Primitive primitive, ThreadParams threadParams) {
+            state = primitive.primitive.newThread(threadParams.getThreadIndex());
+        }
+    }
+
+    /**
+     * Station.
+     * A polling station with one clerk and one booth, set up like Main does.
+     */
+    @State(Scope.Benchmark)
+    public static class Station {
+        @Param({"2", "5", "20", "100"})
+        public int capacity;
+
+        @Param({"200"})
+        public int voters;
+
+        @Param({"20000"})
+        public int limit;
+
+        private Workload election;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            election = Workload.load("Election");
+            election.setUp(capacity, voters, limit);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            election.tearDown();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void primitive(Primitive primitive, Caller caller) throws Exception {
+        primitive.primitive.run(caller.state);
+    }
+
+    /**
+     * A whole election, up to the voter limit; voters per second is limit / score
+     */
+    @Benchmark
+    @Threads(1) // the election starts its own threads
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void election(Station station) throws Exception {
+        station.election.run(null);
+    }
+}
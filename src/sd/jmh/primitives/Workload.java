@@ -0,0 +1,51 @@
+package primitives;
+
+/**
+ * Workload.java
+ * One benchmark on the simulation's classes, driven by PrimitivesBenchmark.
+ * JMH only takes benchmark classes in a named package, and a named package can't see the classes of
+ * the default package, where the simulation is. So the workloads are written next to the simulation
+ * (PrimitiveWorkloads) against this interface, and the benchmark loads them by name. After the first
+ * calls there is one implementation per fork, so the interface calls are inlined like direct ones.
+ */
+public interface Workload {
+    /**
+     * Set up the state the benchmark threads share, once per trial
+     * @param params Parameters of the workload, if it has any
+     * @throws Exception
+     */
+    void setUp(int... params) throws Exception;
+
+    /**
+     * Set up the state of one benchmark thread
+     * @param index Index of the thread, 0..threads-1
+     * @return State passed to run by that thread
+     */
+    Object newThread(int index);
+
+    /**
+     * Do one operation
+     * @param thread State of the calling thread
+     * @throws Exception
+     */
+    void run(Object thread) throws Exception;
+
+    /**
+     * Check what the operations did and release the shared state, once per trial
+     * @throws Exception if an operation lost or duplicated something
+     */
+    void tearDown() throws Exception;
+
+    /**
+     * Load a workload of PrimitiveWorkloads
+     * @param name What it works on, e.g. Desk for PrimitiveWorkloads.DeskWorkload
+     * @return Workload
+     */
+    static Workload load(String name) {
+        try {
+            return (Workload) Class.forName("PrimitiveWorkloads$" + name + "Workload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("No workload " + name, e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.lang.reflect.Method;
+
+/**
+ * ActorThreads.java
+ * This class creates the threads that run the active entities (Voter, PollClerk, Pollster).
+ * In PLATFORM mode every actor gets its own OS thread. In VIRTUAL mode actors run on virtual
+ * threads, which needs Java 21+; the builder is looked up reflectively so the project still
+ * compiles and runs (in platform mode) on older JDKs.
+ */
+public class ActorThreads {
+    public enum Mode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    private static Mode mode = Mode.PLATFORM;
+    private static Object virtualBuilder; // Thread.Builder.OfVirtual
+    private static Method unstarted;      // Thread.Builder.unstarted(Runnable)
+
+    /**
+     * Select how actor threads are created
+     * @param newMode
+     * @throws UnsupportedOperationException if virtual threads are not available in this JVM
+     */
+    public static synchronized void setMode(Mode newMode) {
+        if (newMode == Mode.VIRTUAL && virtualBuilder == null) {
+            try {
+                virtualBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+                unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            } catch (ReflectiveOperationException e) {
+                throw new UnsupportedOperationException("Virtual threads need Java 21 or newer (running " + System.getProperty("java.version") + ")");
+            }
+        }
+        mode = newMode;
+    }
+
+    /**
+     * Get the current thread mode
+     * @return Mode
+     */
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Create (but not start) a thread for an actor
+     * @param actor The actor to run
+     * @return Thread
+     */
+    public static Thread newThread(Runnable actor) {
+        if (mode == Mode.VIRTUAL) {
+            try {
+                return (Thread) unstarted.invoke(virtualBuilder, actor);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create virtual thread", e);
+            }
+        }
+        return new Thread(actor);
+    }
+}
@@ -0,0 +1,360 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AggregationClient.java
+ * This class connects the stations of one process to the AggregationServer.
+ * Clerks claiming voter ids at the same time are answered with a single round trip: a sender
+ * thread takes every pending claim, writes them as one CLAIM frame and moves on to the next
+ * batch without waiting, and a receiver thread hands each CLAIM_RESULT back to the waiting clerks.
+ * Blocks of voter ids are asked for the same way, one block at a time.
+ * If the connection is lost the stations keep going with the checks of their own process
+ * (pending and later claims are accepted, and no more voter id blocks are given).
+ */
+public class AggregationClient {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final int firstStationId;
+    private final ReentrantLock lock;
+    private final Condition claimsPending;
+    private final Condition voterIdsAnswered;
+    private boolean voterIdsAsked;  // a VOTER_IDS frame waits for its answer
+    private int firstLeasedVoterId; // its answer, 0 if none came
+    private final GenericFIFO<Claim> pending;
+    private final GenericFIFO<MyArrayList<Claim>> inFlight; // sent batches, answered in order
+    private final ReentrantLock writeLock;                  // frames of different threads don't interleave
+    private boolean connected;
+    private boolean closing;
+    private final Thread sender;
+    private final Thread receiver;
+    private Logger logger;
+
+    /**
+     * Claim.
+     * A voter id waiting for the server's answer.
+     */
+    private static final class Claim {
+        private final int stationId;
+        private final int voterId;
+        private final Condition answered;
+        private boolean done;
+        private boolean accepted;
+
+        private Claim(int stationId, int voterId, Condition answered) {
+            this.stationId = stationId;
+            this.voterId = voterId;
+            this.answered = answered;
+        }
+    }
+
+    /**
+     * Constructor for AggregationClient, connects and registers the stations.
+     * @param host Host of the aggregation server.
+     * @param port Port of the aggregation server.
+     * @param numStations Number of stations in this process.
+     * @throws IOException if the server can't be reached or has no station ids left
+     */
+    public AggregationClient(String host, int port, int numStations) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true); // small frames, latency matters more than packet count
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeByte(AggregationProtocol.HELLO);
+        out.writeInt(numStations);
+        out.flush();
+        if (in.readByte() != AggregationProtocol.HELLO_ACK) {
+            socket.close();
+            throw new IOException("Unexpected answer from aggregation server");
+        }
+        this.firstStationId = in.readInt();
+        if (firstStationId == 0) {
+            socket.close();
+            throw new IOException("Aggregation server has no room for " + numStations + " more stations");
+        }
+        this.lock = new ReentrantLock();
+        this.claimsPending = lock.newCondition();
+        this.voterIdsAnswered = lock.newCondition();
+        this.pending = new GenericFIFO<>();
+        this.inFlight = new GenericFIFO<>();
+        this.writeLock = new ReentrantLock();
+        this.connected = true;
+        this.logger = Logger.getInstance("log.txt");
+        this.sender = new Thread(this::sendLoop, "aggregation-sender");
+        this.receiver = new Thread(this::receiveLoop, "aggregation-receiver");
+        sender.setDaemon(true);
+        receiver.setDaemon(true);
+        sender.start();
+        receiver.start();
+        logger.log("Connected to aggregation server " + host + ":" + port + " as stations " + firstStationId + "-" + (firstStationId + numStations - 1));
+    }
+
+    /**
+     * Ask the server whether a voter id is still free, waiting for the answer.
+     * @param stationId The (local) station approving the voter.
+     * @param voterId The voter id.
+     * @return False if the id already voted at a station of another process.
+     */
+    public boolean claimVoter(int stationId, int voterId) {
+        lock.lock();
+        try {
+            if (!connected || closing) {
+                return true;
+            }
+            Claim claim = new Claim(stationId, voterId, lock.newCondition());
+            pending.enQueue(claim);
+            claimsPending.signal();
+            while (!claim.done) {
+                claim.answered.awaitUninterruptibly(); // the answer (or the disconnect) always comes
+            }
+            return claim.accepted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ask the server for a block of voter ids no other process uses, waiting for the answer.
+     * Only one block is asked for at a time.
+     * @param count Number of ids, at most AggregationProtocol.VOTER_ID_BLOCK.
+     * @return First id of the block, 0 if the server is gone.
+     */
+    public int leaseVoterIds(int count) {
+        lock.lock();
+        try {
+            if (!connected || closing) {
+                return 0;
+            }
+            voterIdsAsked = true;
+            firstLeasedVoterId = 0;
+        } finally {
+            lock.unlock();
+        }
+        writeLock.lock();
+        try {
+            out.writeByte(AggregationProtocol.VOTER_IDS);
+            out.writeInt(count);
+            out.flush();
+        } catch (IOException e) {
+            disconnect(e);
+        } finally {
+            writeLock.unlock();
+        }
+        lock.lock();
+        try {
+            while (voterIdsAsked) {
+                voterIdsAnswered.awaitUninterruptibly(); // the answer (or the disconnect) always comes
+            }
+            return firstLeasedVoterId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send votes of a (local) station to the server.
+     * @param stationId The station.
+     * @param results Votes counted since the previous delta.
+     */
+    public void sendVoteDelta(int stationId, ElectionResults results) {
+        writeLock.lock();
+        try {
+            AggregationProtocol.writeVoteDelta(out, firstStationId + stationId - 1, results);
+            out.flush();
+        } catch (IOException e) {
+            disconnect(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Tell the server a (local) station sent all its votes.
+     * @param stationId The station.
+     */
+    public void stationFinished(int stationId) {
+        writeLock.lock();
+        try {
+            out.writeByte(AggregationProtocol.STATION_DONE);
+            out.writeInt(firstStationId + stationId - 1);
+            out.flush();
+        } catch (IOException e) {
+            disconnect(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Send the pending claims in batches, without waiting for the answers.
+     */
+    private void sendLoop() {
+        while (true) {
+            MyArrayList<Claim> batch = new MyArrayList<>();
+            lock.lock();
+            try {
+                while (pending.isEmpty() && connected && !closing) {
+                    claimsPending.awaitUninterruptibly();
+                }
+                if (!connected || pending.isEmpty()) {
+                    return;
+                }
+                pending.drainTo(batch, AggregationProtocol.MAX_CLAIMS_PER_FRAME);
+                inFlight.enQueue(batch);
+            } finally {
+                lock.unlock();
+            }
+            writeLock.lock();
+            try {
+                out.writeByte(AggregationProtocol.CLAIM);
+                out.writeInt(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    Claim claim = batch.get(i);
+                    out.writeInt(firstStationId + claim.stationId - 1);
+                    out.writeInt(claim.voterId);
+                }
+                out.flush();
+            } catch (IOException e) {
+                disconnect(e);
+                return;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Hand the answers of the server to the waiting claims.
+     */
+    private void receiveLoop() {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == AggregationProtocol.BYE) {
+                    return;
+                }
+                if (type == AggregationProtocol.VOTER_IDS_ACK) {
+                    int first = in.readInt();
+                    lock.lock();
+                    try {
+                        if (!voterIdsAsked) {
+                            throw new IOException("Voter ids the client didn't ask for");
+                        }
+                        firstLeasedVoterId = first;
+                        voterIdsAsked = false;
+                        voterIdsAnswered.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    continue;
+                }
+                if (type != AggregationProtocol.CLAIM_RESULT) {
+                    throw new IOException("Unexpected frame " + type + " from aggregation server");
+                }
+                int count = AggregationProtocol.checkClaimCount(in.readInt());
+                byte[] accepted = new byte[(count + 7) / 8];
+                in.readFully(accepted);
+                lock.lock();
+                try {
+                    MyArrayList<Claim> batch = inFlight.deQueue();
+                    if (batch == null || batch.size() != count) {
+                        throw new IOException("Claim result doesn't match the batch sent");
+                    }
+                    for (int i = 0; i < count; i++) {
+                        Claim claim = batch.get(i);
+                        claim.accepted = (accepted[i >>> 3] & (1 << (i & 7))) != 0;
+                        claim.done = true;
+                        claim.answered.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            disconnect(e);
+        }
+    }
+
+    /**
+     * Give up on the server: every waiting claim is accepted, a waiting voter id block gets none
+     * @param cause
+     */
+    private void disconnect(IOException cause) {
+        lock.lock();
+        try {
+            if (!connected) {
+                return;
+            }
+            connected = false;
+            if (!closing) {
+                logger.log("! Lost aggregation server (" + cause.getMessage() + "), stations only check their own voters");
+            }
+            MyArrayList<Claim> unanswered = new MyArrayList<>();
+            while (!inFlight.isEmpty()) {
+                MyArrayList<Claim> batch = inFlight.deQueue();
+                for (int i = 0; i < batch.size(); i++) {
+                    unanswered.add(batch.get(i));
+                }
+            }
+            pending.drainTo(unanswered);
+            for (int i = 0; i < unanswered.size(); i++) {
+                Claim claim = unanswered.get(i);
+                claim.accepted = true;
+                claim.done = true;
+                claim.answered.signal();
+            }
+            voterIdsAsked = false;
+            voterIdsAnswered.signal();
+            claimsPending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send the remaining claims, say goodbye and close the connection.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closing = true;
+            claimsPending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            sender.join();
+            writeLock.lock();
+            try {
+                out.writeByte(AggregationProtocol.BYE);
+                out.flush();
+            } catch (IOException e) {
+                disconnect(e);
+            } finally {
+                writeLock.unlock();
+            }
+            receiver.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    /**
+     * Get the id the server gave to the first station of this process.
+     * @return int
+     */
+    public int getFirstStationId() {
+        return firstStationId;
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * AggregationProtocol.java
+ * This class defines the binary protocol between station processes (AggregationClient)
+ * and the AggregationServer. Every frame starts with a one byte type, integers are big-endian.
+ *
+ *   HELLO          client  int stations                   asks for a block of station ids
+ *   HELLO_ACK      server  int firstStationId             0 if the server has no ids left
+ *   CLAIM          client  int count, count x (int stationId, int voterId)
+ *   CLAIM_RESULT   server  int count, (count + 7) / 8 bytes, bit i set if claim i was accepted
+ *   VOTE_DELTA     client  int stationId, byte parties, parties x int votes
+ *   STATION_DONE   client  int stationId
+ *   VOTER_IDS      client  int count                      asks for a block of voter ids
+ *   VOTER_IDS_ACK  server  int firstVoterId
+ *   BYE            both    the client is leaving, the server answers with BYE and closes
+ *
+ * The server answers CLAIM and VOTER_IDS frames in the order it receives them, so the client can
+ * pipeline them without request ids. Voter ids are handed out in blocks, like station ids, so the
+ * voters of different processes never share an id and only a real repeat is a duplicate.
+ */
+public final class AggregationProtocol {
+    public static final byte HELLO = 1;
+    public static final byte HELLO_ACK = 2;
+    public static final byte CLAIM = 3;
+    public static final byte CLAIM_RESULT = 4;
+    public static final byte VOTE_DELTA = 5;
+    public static final byte STATION_DONE = 6;
+    public static final byte BYE = 7;
+    public static final byte VOTER_IDS = 8;
+    public static final byte VOTER_IDS_ACK = 9;
+
+    public static final int DEFAULT_PORT = 7070;
+    public static final int MAX_CLAIMS_PER_FRAME = 4096;
+    public static final int VOTER_ID_BLOCK = 1 << 16;
+
+    private AggregationProtocol() {
+    }
+
+    /**
+     * Write the votes of a station
+     * @param out
+     * @param stationId Station id on the server
+     * @param results Votes to add
+     * @throws IOException
+     */
+    public static void writeVoteDelta(DataOutputStream out, int stationId, ElectionResults results) throws IOException {
+        VotingParties[] parties = VotingParties.values();
+        out.writeByte(VOTE_DELTA);
+        out.writeInt(stationId);
+        out.writeByte(parties.length);
+        for (VotingParties party : parties) {
+            out.writeInt(results.get(party));
+        }
+    }
+
+    /**
+     * Read the body of a VOTE_DELTA frame (after the type byte)
+     * @param in
+     * @param results Receives the votes
+     * @return Station id
+     * @throws IOException if the sender knows a different number of parties
+     */
+    public static int readVoteDelta(DataInputStream in, ElectionResults results) throws IOException {
+        VotingParties[] parties = VotingParties.values();
+        int stationId = in.readInt();
+        int count = in.readUnsignedByte();
+        if (count != parties.length) {
+            throw new IOException("Vote delta has " + count + " parties, expected " + parties.length);
+        }
+        for (VotingParties party : parties) {
+            results.put(party, in.readInt());
+        }
+        return stationId;
+    }
+
+    /**
+     * Check the claim count of a CLAIM or CLAIM_RESULT frame
+     * @param count
+     * @return count
+     * @throws IOException if the count is out of range
+     */
+    public static int checkClaimCount(int count) throws IOException {
+        if (count < 0 || count > MAX_CLAIMS_PER_FRAME) {
+            throw new IOException("Bad claim count " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AggregationServer.java
+ * This class merges the results of polling stations running in separate processes into the
+ * national tally, and rejects a voter id that was already approved at any other station.
+ * Each station process connects with an AggregationClient and gets a block of station ids, and
+ * blocks of voter ids as it needs them; the connection is served by its own thread, and the claims
+ * of every connection go to one ElectionAggregator. The server stops once every expected station
+ * reported its results. A process that drops its connection counts as reported for the stations
+ * it hadn't reported yet, with the votes it streamed (up to its last live tally tick), so the server
+ * doesn't wait for it forever.
+ *
+ * Usage: java AggregationServer [port] [stations]
+ */
+public class AggregationServer {
+    private final ServerSocket serverSocket;
+    private final ElectionAggregator aggregator;
+    private final AtomicInteger nextStationId;
+    private final AtomicInteger nextVoterId; // first id of the next voter id block
+    private final int numStations;
+    private Logger logger;
+
+    /**
+     * Constructor for AggregationServer, binds to the loopback interface.
+     * @param port Port to listen on (0 for any free port).
+     * @param numStations Number of stations expected, across all processes.
+     * @throws IOException if the port can't be bound
+     */
+    public AggregationServer(int port, int numStations) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.numStations = numStations;
+        this.aggregator = new ElectionAggregator(numStations);
+        this.nextStationId = new AtomicInteger(1);
+        this.nextVoterId = new AtomicInteger(1);
+        this.logger = Logger.getInstance("aggregator_log.txt");
+    }
+
+    /**
+     * Start accepting station processes.
+     */
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "aggregation-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.log("Aggregation server listening on port " + getPort() + " for " + numStations + " stations");
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread handler = new Thread(() -> serve(socket), "aggregation-" + socket.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.log("! Aggregation server could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Serve one station process until it says goodbye.
+     * @param socket
+     */
+    private void serve(Socket socket) {
+        int firstStationId = 0;
+        int lastStationId = -1;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            if (in.readByte() != AggregationProtocol.HELLO) {
+                throw new IOException("Expected HELLO");
+            }
+            int stations = in.readInt();
+            if (stations > 0) {
+                firstStationId = nextStationId.getAndAdd(stations);
+                lastStationId = firstStationId + stations - 1;
+            }
+            if (stations <= 0 || lastStationId > numStations) {
+                firstStationId = 0;
+            }
+            out.writeByte(AggregationProtocol.HELLO_ACK);
+            out.writeInt(firstStationId);
+            out.flush();
+            if (firstStationId == 0) {
+                return;
+            }
+            logger.log("Stations " + firstStationId + "-" + lastStationId + " connected from port " + socket.getPort());
+
+            byte[] accepted = new byte[(AggregationProtocol.MAX_CLAIMS_PER_FRAME + 7) / 8];
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case AggregationProtocol.CLAIM -> {
+                        int count = AggregationProtocol.checkClaimCount(in.readInt());
+                        int bytes = (count + 7) / 8;
+                        Arrays.fill(accepted, 0, bytes, (byte) 0);
+                        for (int i = 0; i < count; i++) {
+                            int stationId = checkStation(in.readInt(), firstStationId, lastStationId);
+                            int voterId = in.readInt();
+                            if (aggregator.claimVoter(stationId, voterId)) {
+                                accepted[i >>> 3] |= (byte) (1 << (i & 7));
+                            }
+                        }
+                        out.writeByte(AggregationProtocol.CLAIM_RESULT);
+                        out.writeInt(count);
+                        out.write(accepted, 0, bytes);
+                        out.flush();
+                    }
+                    case AggregationProtocol.VOTE_DELTA -> {
+                        ElectionResults delta = new ElectionResults();
+                        int stationId = checkStation(AggregationProtocol.readVoteDelta(in, delta), firstStationId, lastStationId);
+                        aggregator.addVotes(stationId, delta);
+                    }
+                    case AggregationProtocol.STATION_DONE ->
+                        aggregator.stationFinished(checkStation(in.readInt(), firstStationId, lastStationId));
+                    case AggregationProtocol.VOTER_IDS -> {
+                        int count = in.readInt();
+                        if (count <= 0 || count > AggregationProtocol.VOTER_ID_BLOCK) {
+                            throw new IOException("Bad voter id count " + count);
+                        }
+                        int first = nextVoterId.getAndAdd(count);
+                        if (first <= 0 || first - 1 > Integer.MAX_VALUE - count) {
+                            throw new IOException("No voter ids left");
+                        }
+                        out.writeByte(AggregationProtocol.VOTER_IDS_ACK);
+                        out.writeInt(first);
+                        out.flush();
+                    }
+                    case AggregationProtocol.BYE -> {
+                        out.writeByte(AggregationProtocol.BYE);
+                        out.flush();
+                        return;
+                    }
+                    default -> throw new IOException("Unknown frame type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            logger.log("! Stations " + firstStationId + "-" + lastStationId + " disconnected without saying goodbye");
+        } catch (IOException e) {
+            logger.log("! Stations " + firstStationId + "-" + lastStationId + " dropped: " + e.getMessage());
+        } finally {
+            releaseStations(firstStationId, lastStationId);
+        }
+    }
+
+    /**
+     * Count the stations of a closed connection that never reported as reported, with the votes
+     * they streamed, so awaitAllStations doesn't wait for a process that is gone
+     * @param first
+     * @param last
+     */
+    private void releaseStations(int first, int last) {
+        for (int stationId = Math.max(1, first); stationId <= last; stationId++) {
+            if (!aggregator.isStationFinished(stationId)) {
+                logger.log("! Station " + stationId + " left without reporting, counted with the votes it streamed");
+                aggregator.stationFinished(stationId);
+            }
+        }
+    }
+
+    /**
+     * Check that a connection only speaks for its own stations
+     * @param stationId
+     * @param first
+     * @param last
+     * @return stationId
+     * @throws IOException if the station belongs to another connection
+     */
+    private static int checkStation(int stationId, int first, int last) throws IOException {
+        if (stationId < first || stationId > last) {
+            throw new IOException("Station " + stationId + " is not one of stations " + first + "-" + last);
+        }
+        return stationId;
+    }
+
+    /**
+     * Wait until every station reported, then stop listening.
+     * @throws InterruptedException
+     */
+    public void awaitAllStations() throws InterruptedException {
+        aggregator.awaitAllStations();
+        close();
+    }
+
+    /**
+     * Stop listening for station processes.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.log("! Could not close the aggregation server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the port the server listens on.
+     * @return int
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the aggregator holding the national tally.
+     * @return ElectionAggregator
+     */
+    public ElectionAggregator getAggregator() {
+        return aggregator;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : AggregationProtocol.DEFAULT_PORT;
+        int stations = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        Logger logger = Logger.getInstance("aggregator_log.txt"); // before the aggregator takes the station log name
+        AggregationServer server = new AggregationServer(port, stations);
+        server.start();
+        System.out.println("Aggregation server listening on port " + server.getPort() + ", waiting for " + stations + " stations...");
+
+        server.awaitAllStations();
+
+        ElectionResults national = server.getAggregator().getGlobalResults();
+        System.out.println("National Election Results:");
+        for (VotingParties party : VotingParties.values()) {
+            System.out.println(party + " : " + national.get(party));
+        }
+        System.out.println("Cross-station duplicate voters rejected: " + server.getAggregator().getCrossStationDuplicates());
+        System.out.println("Written all logs to \"aggregator_log.txt\" file");
+        logger.close();
+    }
+}
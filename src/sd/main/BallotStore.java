@@ -0,0 +1,286 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * BallotStore.java
+ * This class keeps every ballot cast at a station, in the order they were cast, for audits and recounts.
+ * A ballot is the party's ordinal packed in BITS bits (2 for four parties) of a long word, and the
+ * words are kept in segments allocated as the store grows, so a billion ballots take 250 MB and no
+ * object per ballot. Ballots are only ever appended, so the first n ballots never change once stored.
+ *
+ * Counting is SWAR (SIMD within a register): a word is XORed with the party's ordinal repeated in every
+ * field, the bits of each field are ORed into its lowest bit, and one popcount gives the fields that
+ * differ. That is a few instructions per party for the PER_WORD ballots of a word, with no branch.
+ */
+public class BallotStore {
+    private static final VotingParties[] PARTIES = VotingParties.values();
+    public static final int BITS = bitsPerBallot(PARTIES.length);
+    public static final int PER_WORD = 64 / BITS;
+    private static final int SEGMENT_SHIFT = 13; // 8192 words (64 KB) per segment
+    private static final int SEGMENT_WORDS = 1 << SEGMENT_SHIFT;
+    private static final long FIELD_MASK = (1L << BITS) - 1;
+    private static final long LOW_BITS = Long.divideUnsigned(-1L, FIELD_MASK); // lowest bit of every field
+
+    private final ReentrantLock lock;
+    private long[][] segments; // replaced, never changed, when it grows
+    private long size;         // ballots stored, changed under the lock after the ballot is written
+
+    /**
+     * Constructor for BallotStore
+     */
+    public BallotStore() {
+        this.lock = new ReentrantLock();
+        this.segments = new long[1][];
+        this.size = 0;
+    }
+
+    /**
+     * Append a ballot
+     * @param party The party voted for
+     */
+    public void add(VotingParties party) {
+        lock.lock();
+        try {
+            append(party.ordinal());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append every ballot of another store, in its order (e.g. recovered from the journal)
+     * @param other Ballots to append
+     */
+    public void addAll(BallotStore other) {
+        long count = other.size();
+        lock.lock();
+        try {
+            for (long i = 0; i < count; i++) {
+                append(other.ordinalAt(i));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(int ordinal) {
+        long word = size / PER_WORD;
+        int segment = (int) (word >>> SEGMENT_SHIFT);
+        if (segment == segments.length) {
+            long[][] bigger = new long[segments.length * 2][];
+            System.arraycopy(segments, 0, bigger, 0, segments.length);
+            segments = bigger;
+        }
+        if (segments[segment] == null) {
+            segments[segment] = new long[SEGMENT_WORDS];
+        }
+        segments[segment][(int) (word & (SEGMENT_WORDS - 1))] |= (long) ordinal << (BITS * (int) (size % PER_WORD));
+        size++;
+    }
+
+    /**
+     * Get the number of ballots stored
+     * @return long
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a ballot
+     * @param index Position in the order the ballots were cast
+     * @return VotingParties
+     */
+    public VotingParties get(long index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Invalid index");
+        }
+        return PARTIES[ordinalAt(index)];
+    }
+
+    private int ordinalAt(long index) {
+        long[][] current = currentSegments();
+        long word = index / PER_WORD;
+        return (int) ((current[(int) (word >>> SEGMENT_SHIFT)][(int) (word & (SEGMENT_WORDS - 1))]
+                >>> (BITS * (int) (index % PER_WORD))) & FIELD_MASK);
+    }
+
+    /**
+     * Get the segments, published by the lock together with the ballots written into them
+     */
+    private long[][] currentSegments() {
+        lock.lock();
+        try {
+            return segments;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Count every ballot stored so far
+     * @return Votes, indexed by party ordinal
+     */
+    public long[] count() {
+        return count(0, size());
+    }
+
+    /**
+     * Count a range of ballots
+     * @param from First ballot, inclusive
+     * @param to Last ballot, exclusive, at most size()
+     * @return Votes, indexed by party ordinal
+     */
+    public long[] count(long from, long to) {
+        long[] counts = new long[PARTIES.length];
+        addCounts(from, to, counts);
+        return counts;
+    }
+
+    /**
+     * Add the votes of a range of ballots to an array, indexed by party ordinal, without allocating.
+     * The range is counted a word at a time, the partial words at its ends through a field mask
+     * @param from First ballot, inclusive
+     * @param to Last ballot, exclusive, at most size()
+     * @param counts Array to add to
+     */
+    public void addCounts(long from, long to, long[] counts) {
+        if (from < 0 || from > to || to > size()) {
+            throw new IndexOutOfBoundsException("Invalid range");
+        }
+        if (from == to) {
+            return;
+        }
+        long[][] current = currentSegments();
+        long firstWord = from / PER_WORD;
+        long lastWord = (to - 1) / PER_WORD; // inclusive
+        long headMask = LOW_BITS << (BITS * (int) (from % PER_WORD));
+        long tailMask = LOW_BITS >>> (BITS * (PER_WORD - 1 - (int) ((to - 1) % PER_WORD)));
+        if (firstWord == lastWord) {
+            countWord(current, firstWord, headMask & tailMask, counts);
+            return;
+        }
+        countWord(current, firstWord, headMask, counts);
+        long word = firstWord + 1;
+        while (word < lastWord) { // whole words, a segment at a time
+            int segment = (int) (word >>> SEGMENT_SHIFT);
+            int start = (int) (word & (SEGMENT_WORDS - 1));
+            int end = (int) Math.min(SEGMENT_WORDS, start + (lastWord - word));
+            countWords(current[segment], start, end, counts);
+            word += end - start;
+        }
+        countWord(current, lastWord, tailMask, counts);
+    }
+
+    /**
+     * Count the ballots of whole words. Party 0 is what the other parties leave
+     */
+    private static void countWords(long[] words, int start, int end, long[] counts) {
+        long others = 0;
+        for (int p = 1; p < PARTIES.length; p++) {
+            long pattern = LOW_BITS * p;
+            long differ = 0;
+            for (int i = start; i < end; i++) {
+                differ += Long.bitCount(differingFields(words[i] ^ pattern));
+            }
+            long matches = (long) (end - start) * PER_WORD - differ;
+            counts[p] += matches;
+            others += matches;
+        }
+        counts[0] += (long) (end - start) * PER_WORD - others;
+    }
+
+    /**
+     * Count the ballots of the fields of one word selected by a mask of their lowest bits
+     */
+    private static void countWord(long[][] segments, long word, long mask, long[] counts) {
+        long bits = segments[(int) (word >>> SEGMENT_SHIFT)][(int) (word & (SEGMENT_WORDS - 1))];
+        for (int p = 0; p < PARTIES.length; p++) {
+            counts[p] += Long.bitCount(~differingFields(bits ^ (LOW_BITS * p)) & mask);
+        }
+    }
+
+    /**
+     * Fold the bits of every field into its lowest bit
+     * @return The lowest bit of every field that isn't zero
+     */
+    private static long differingFields(long bits) {
+        for (int shift = 1; shift < BITS; shift <<= 1) {
+            bits |= bits >>> shift;
+        }
+        return bits & LOW_BITS;
+    }
+
+    /**
+     * Get the memory taken by the ballots
+     * @return Bytes allocated for the segments
+     */
+    public long getAllocatedBytes() {
+        long[][] current = currentSegments();
+        long bytes = 0;
+        for (long[] segment : current) {
+            bytes += segment == null ? 0 : 8L * segment.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the first ballots, as the packed words
+     * @param out Stream to write to
+     * @param count Number of ballots, at most size()
+     * @throws IOException
+     */
+    public void writeTo(DataOutputStream out, long count) throws IOException {
+        long[][] current = currentSegments();
+        long words = (count + PER_WORD - 1) / PER_WORD;
+        for (long word = 0; word < words; word++) {
+            long bits = current[(int) (word >>> SEGMENT_SHIFT)][(int) (word & (SEGMENT_WORDS - 1))];
+            if (word == words - 1 && count % PER_WORD != 0) {
+                bits &= (1L << (BITS * (int) (count % PER_WORD))) - 1; // ballots stored later
+            }
+            out.writeLong(bits);
+        }
+    }
+
+    /**
+     * Read ballots written by writeTo
+     * @param in Stream to read from
+     * @param count Number of ballots
+     * @return BallotStore
+     * @throws IOException if a ballot isn't a party
+     */
+    public static BallotStore readFrom(DataInputStream in, long count) throws IOException {
+        BallotStore store = new BallotStore();
+        long words = (count + PER_WORD - 1) / PER_WORD;
+        for (long word = 0; word < words; word++) {
+            long bits = in.readLong();
+            int fields = (int) Math.min(PER_WORD, count - word * PER_WORD);
+            for (int f = 0; f < fields; f++) {
+                int ordinal = (int) ((bits >>> (BITS * f)) & FIELD_MASK);
+                if (ordinal >= PARTIES.length) {
+                    throw new IOException("ballot " + (word * PER_WORD + f) + " is not a party");
+                }
+                store.append(ordinal);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Smallest power of two number of bits that holds every party, so a field never spans two words
+     */
+    private static int bitsPerBallot(int parties) {
+        int bits = 1;
+        while ((1 << bits) < parties) {
+            bits <<= 1;
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,488 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Checkpoint.java
+ * This class saves a running election so it can be resumed after the JVM stops, and restores it.
+ * A checkpoint is taken at a safepoint: every station is paused (nobody enters, the clerks finish the
+ * voter they are checking and take no other) until its approved voters have voted and left the exit
+ * poll. The pause lasts as long as the few voters inside a station need, not the election so far.
+ * At the safepoint the only voters in a station are the ones waiting at the desk and nothing moves
+ * until it resumes, so one copy of the counters, approved ids, votes, pollster progress and desk
+ * queue is consistent; the copy is then written while the election goes on. Ballots are only
+ * appended, so the copy of the ballot store is just its size at the safepoint.
+ *
+ * The file is compact binary: variable length integers, approved ids sorted and delta encoded, the
+ * ballots as the packed words of the BallotStore, and a CRC32 at the end. With an electoral roll the
+ * stations share one record of who voted, so its ids are written once for the whole process. It is written to a temporary file and renamed over the previous checkpoint, so
+ * a crash while writing keeps the previous one. Resuming reads it back in one pass, nothing is replayed.
+ */
+public final class Checkpoint {
+    private static final int MAGIC = 0x45434B50; // "ECKP"
+    private static final byte VERSION = 3; // 2 added the ballots, 3 the electoral roll's voters
+    private static final long SAFEPOINT_TIMEOUT_MS = 10_000;
+    private static final VotingParties[] PARTIES = VotingParties.values();
+
+    private final long takenAt;     // System.currentTimeMillis()
+    private final int lastVoterId;  // handed out by the aggregator, 0 without one
+    private final StationState[] stations;
+    private final int[] rollVotedIds; // sorted, empty without an electoral roll
+    private long pauseNanos;        // how long the stations were paused, 0 when read from a file
+
+    private static Thread saver;
+
+    /**
+     * StationState.
+     * What a checkpoint keeps of one polling station. At the safepoint every voter inside the
+     * station is in the desk queue, so that queue is the station's current voters.
+     */
+    public static final class StationState {
+        private final int voterOffset;
+        private final int lastVoterId;
+        private final int interviews;
+        private final long[] votes;         // indexed by party
+        private final int[] approvedIds;
+        private final int[] queuedIds;      // desk queue, front first
+        private final byte[] queuedParties;
+        private final BallotStore ballots;
+        private final long numBallots;      // the ballots of the store that belong to the checkpoint
+
+        private StationState(int voterOffset, int lastVoterId, int interviews, long[] votes,
+                             int[] approvedIds, int[] queuedIds, byte[] queuedParties, BallotStore ballots, long numBallots) {
+            this.voterOffset = voterOffset;
+            this.lastVoterId = lastVoterId;
+            this.interviews = interviews;
+            this.votes = votes;
+            this.approvedIds = approvedIds;
+            this.queuedIds = queuedIds;
+            this.queuedParties = queuedParties;
+            this.ballots = ballots;
+            this.numBallots = numBallots;
+        }
+
+        /**
+         * Get the number of voters waiting at the desk
+         * @return int
+         */
+        public int getNumQueued() {
+            return queuedIds.length;
+        }
+
+        /**
+         * Get the id of a voter waiting at the desk
+         * @param index Position in the queue, 0 is the front
+         * @return int
+         */
+        public int getQueuedId(int index) {
+            return queuedIds[index];
+        }
+
+        /**
+         * Get the party a voter waiting at the desk was going to vote for
+         * @param index Position in the queue, 0 is the front
+         * @return VotingParties
+         */
+        public VotingParties getQueuedParty(int index) {
+            return PARTIES[queuedParties[index]];
+        }
+
+        private long totalVotes() {
+            long total = 0;
+            for (long count : votes) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    private Checkpoint(long takenAt, int lastVoterId, StationState[] stations, int[] rollVotedIds) {
+        this.takenAt = takenAt;
+        this.lastVoterId = lastVoterId;
+        this.stations = stations;
+        this.rollVotedIds = rollVotedIds;
+    }
+
+    /**
+     * Bring every station to a safepoint, copy their state and let them go on
+     * @param stations Stations of this process
+     * @param pollsters Pollster of each station
+     * @param aggregator Aggregator of the stations, null for a single station
+     * @param timeoutMillis Longest pause before giving up
+     * @param resume false to leave the stations paused, when the election stops after the checkpoint
+     * @return Checkpoint, or null if a station didn't reach its safepoint in time
+     * @throws InterruptedException
+     */
+    public static Checkpoint take(PollingStation[] stations, Pollster[] pollsters, ElectionAggregator aggregator,
+                                  long timeoutMillis, boolean resume) throws InterruptedException {
+        long pauseStart = System.nanoTime();
+        long deadline = pauseStart + timeoutMillis * 1_000_000;
+        StationState[] states = new StationState[stations.length];
+        int lastVoterId;
+        int[] rollVotedIds;
+        for (PollingStation station : stations) {
+            station.pause();
+        }
+        try {
+            for (PollingStation station : stations) {
+                if (!station.awaitSafepoint(deadline)) {
+                    Logger.getInstance("log.txt").log("! Checkpoint skipped: station " + station.getStationId()
+                            + " did not reach a safepoint in " + timeoutMillis + " ms");
+                    return null;
+                }
+            }
+            for (int i = 0; i < stations.length; i++) {
+                states[i] = capture(stations[i], pollsters[i]);
+            }
+            lastVoterId = aggregator == null ? 0 : aggregator.getLastVoterId();
+            ElectoralRoll roll = stations.length == 0 ? null : stations[0].getElectoralRoll(); // shared by every station
+            rollVotedIds = roll == null ? new int[0] : roll.getVotedIds(); // in roll order, so sorted
+        } finally {
+            for (int i = 0; i < stations.length && resume; i++) {
+                stations[i].resume();
+            }
+        }
+        Checkpoint checkpoint = new Checkpoint(System.currentTimeMillis(), lastVoterId, states, rollVotedIds);
+        checkpoint.pauseNanos = System.nanoTime() - pauseStart;
+        for (StationState state : states) {
+            Arrays.sort(state.approvedIds); // after resume, the stations don't wait for it
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Copy the state of a station at its safepoint
+     */
+    private static StationState capture(PollingStation station, Pollster pollster) {
+        Voter[] queued = station.getDesk().getQueuedVoters();
+        int[] queuedIds = new int[queued.length];
+        byte[] queuedParties = new byte[queued.length];
+        for (int i = 0; i < queued.length; i++) {
+            queuedIds[i] = queued[i].getVoterId();
+            queuedParties[i] = (byte) queued[i].getParty().ordinal();
+        }
+        TallySnapshot tally = station.getLiveTally().snapshot(); // exact, no vote is being cast
+        long[] votes = new long[PARTIES.length];
+        for (int p = 0; p < PARTIES.length; p++) {
+            votes[p] = tally.get(PARTIES[p]);
+        }
+        BallotStore ballots = station.getVotingBooths().getBallots();
+        return new StationState(station.getVoterOffset(), station.getLastVoterId(), pollster.getInterviews(),
+                votes, station.getApprovedIds(), queuedIds, queuedParties, ballots, ballots.size());
+    }
+
+    /**
+     * Take a checkpoint and write it, logging the pause and the size
+     * @param path Checkpoint file
+     * @param stations Stations of this process
+     * @param pollsters Pollster of each station
+     * @param aggregator Aggregator of the stations, null for a single station
+     * @param resume false to leave the stations paused, when the election stops after the checkpoint
+     * @return true if it was written
+     */
+    public static synchronized boolean save(Path path, PollingStation[] stations, Pollster[] pollsters,
+                                            ElectionAggregator aggregator, boolean resume) {
+        Logger logger = Logger.getInstance("log.txt");
+        try {
+            Checkpoint checkpoint = take(stations, pollsters, aggregator, SAFEPOINT_TIMEOUT_MS, resume);
+            if (checkpoint == null) {
+                return false;
+            }
+            long writeStart = System.nanoTime();
+            long bytes = checkpoint.write(path);
+            logger.log(String.format("Checkpoint of %d stations (%d approved, %d queued, %d votes): paused %.3f ms, written in %.3f ms, %d bytes to %s",
+                    stations.length, checkpoint.getNumApproved(), checkpoint.getNumQueued(), checkpoint.getNumVotes(),
+                    checkpoint.pauseNanos / 1_000_000.0, (System.nanoTime() - writeStart) / 1_000_000.0, bytes, path));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            logger.log("! Could not write checkpoint " + path + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Save a checkpoint periodically, on a daemon thread
+     * @param path Checkpoint file
+     * @param stations Stations of this process
+     * @param pollsters Pollster of each station
+     * @param aggregator Aggregator of the stations, null for a single station
+     * @param periodMillis Time between checkpoints, in real milliseconds
+     */
+    public static synchronized void startSaver(Path path, PollingStation[] stations, Pollster[] pollsters,
+                                               ElectionAggregator aggregator, long periodMillis) {
+        if (saver != null || periodMillis <= 0) {
+            return;
+        }
+        saver = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(periodMillis);
+                    save(path, stations, pollsters, aggregator, true);
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }, "checkpoint-saver");
+        saver.setDaemon(true);
+        saver.start();
+    }
+
+    /**
+     * Stop the periodic checkpoints
+     */
+    public static synchronized void stopSaver() {
+        if (saver != null) {
+            saver.interrupt();
+            saver = null;
+        }
+    }
+
+    /**
+     * Write the checkpoint to a file, replacing the previous one only once it is complete
+     * @param path Checkpoint file
+     * @return Size of the file in bytes
+     * @throws IOException
+     */
+    public long write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(takenAt);
+            writeVarLong(out, lastVoterId);
+            writeVarLong(out, stations.length);
+            for (StationState state : stations) {
+                writeVarLong(out, state.voterOffset);
+                writeVarLong(out, state.lastVoterId);
+                writeVarLong(out, state.interviews);
+                for (long count : state.votes) {
+                    writeVarLong(out, count);
+                }
+                writeIds(out, state.approvedIds);
+                writeVarLong(out, state.queuedIds.length);
+                for (int i = 0; i < state.queuedIds.length; i++) {
+                    writeVarLong(out, state.queuedIds[i]);
+                    out.writeByte(state.queuedParties[i]);
+                }
+                writeVarLong(out, state.numBallots);
+                state.ballots.writeTo(out, state.numBallots);
+            }
+            writeIds(out, rollVotedIds);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(path);
+    }
+
+    /**
+     * Read a checkpoint written by write
+     * @param path Checkpoint file
+     * @return Checkpoint
+     * @throws IOException if the file can't be read, isn't a checkpoint or is corrupt
+     */
+    public static Checkpoint read(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16), crc))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("not a checkpoint file");
+            }
+            long takenAt = in.readLong();
+            int lastVoterId = (int) readVarLong(in);
+            StationState[] stations = new StationState[(int) readVarLong(in)];
+            for (int s = 0; s < stations.length; s++) {
+                int voterOffset = (int) readVarLong(in);
+                int stationLastVoterId = (int) readVarLong(in);
+                int interviews = (int) readVarLong(in);
+                long[] votes = new long[PARTIES.length];
+                for (int p = 0; p < votes.length; p++) {
+                    votes[p] = readVarLong(in);
+                }
+                int[] approvedIds = readIds(in);
+                int[] queuedIds = new int[(int) readVarLong(in)];
+                byte[] queuedParties = new byte[queuedIds.length];
+                for (int i = 0; i < queuedIds.length; i++) {
+                    queuedIds[i] = (int) readVarLong(in);
+                    queuedParties[i] = in.readByte();
+                    if (queuedParties[i] < 0 || queuedParties[i] >= PARTIES.length) {
+                        throw new IOException("checkpoint is corrupt");
+                    }
+                }
+                long numBallots = readVarLong(in);
+                BallotStore ballots = BallotStore.readFrom(in, numBallots);
+                stations[s] = new StationState(voterOffset, stationLastVoterId, interviews, votes, approvedIds, queuedIds, queuedParties,
+                        ballots, numBallots);
+            }
+            int[] rollVotedIds = readIds(in);
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("checkpoint is corrupt");
+            }
+            return new Checkpoint(takenAt, lastVoterId, stations, rollVotedIds);
+        }
+    }
+
+    /**
+     * Restore the voter ids of every station into their aggregator, before any station opens
+     * @param aggregator
+     */
+    public void restoreVoterIds(ElectionAggregator aggregator) {
+        int[] ids = new int[(int) getNumApproved()];
+        int i = 0;
+        for (StationState state : stations) {
+            System.arraycopy(state.approvedIds, 0, ids, i, state.approvedIds.length);
+            i += state.approvedIds.length;
+        }
+        System.arraycopy(rollVotedIds, 0, ids, i, rollVotedIds.length);
+        aggregator.restoreVoterIds(lastVoterId, ids);
+    }
+
+    /**
+     * Mark the voters of the electoral roll that had voted, once for every station sharing it,
+     * before any station opens
+     * @param roll The roll, the same file the checkpoint was taken with
+     */
+    public void restoreElectoralRoll(ElectoralRoll roll) {
+        for (int id : rollVotedIds) {
+            roll.markVoted(id);
+        }
+    }
+
+    /**
+     * Get the number of voters recorded in the electoral roll's section
+     * @return int, 0 if the checkpoint was taken without a roll
+     */
+    public int getNumRollVoters() {
+        return rollVotedIds.length;
+    }
+
+    /**
+     * Restore a station and its pollster, before their threads start. The voters that were waiting
+     * at the desk are put back by the caller, from the returned state
+     * @param index Position of the station (its id - 1)
+     * @param station
+     * @param pollster
+     * @return StationState, for the desk queue
+     */
+    public StationState restore(int index, PollingStation station, Pollster pollster) {
+        StationState state = stations[index];
+        station.restoreState(state.voterOffset, state.lastVoterId, state.approvedIds);
+        StripedVoteCounter counter = station.getVotingBooths().getBooth(0).getVotes();
+        for (int p = 0; p < PARTIES.length; p++) {
+            counter.add(PARTIES[p], state.votes[p]);
+        }
+        station.getVotingBooths().getBallots().addAll(state.ballots);
+        pollster.restoreInterviews(state.interviews);
+        return state;
+    }
+
+    /**
+     * Get the number of stations in the checkpoint
+     * @return int
+     */
+    public int getNumStations() {
+        return stations.length;
+    }
+
+    /**
+     * Get when the checkpoint was taken
+     * @return System.currentTimeMillis()
+     */
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    /**
+     * Get the number of approved ids of every station
+     * @return long
+     */
+    public long getNumApproved() {
+        long total = rollVotedIds.length;
+        for (StationState state : stations) {
+            total += state.approvedIds.length;
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of voters waiting at a desk, of every station
+     * @return long
+     */
+    public long getNumQueued() {
+        long total = 0;
+        for (StationState state : stations) {
+            total += state.queuedIds.length;
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of votes cast, at every station
+     * @return long
+     */
+    public long getNumVotes() {
+        long total = 0;
+        for (StationState state : stations) {
+            total += state.totalVotes();
+        }
+        return total;
+    }
+
+    /**
+     * Write sorted ids as their count and the gaps between them
+     */
+    private static void writeIds(DataOutputStream out, int[] sortedIds) throws IOException {
+        writeVarLong(out, sortedIds.length);
+        long previous = 0;
+        for (int id : sortedIds) { // sorted, so small gaps
+            writeVarLong(out, id - previous);
+            previous = id;
+        }
+    }
+
+    private static int[] readIds(DataInputStream in) throws IOException {
+        int[] ids = new int[(int) readVarLong(in)];
+        long previous = 0;
+        for (int i = 0; i < ids.length; i++) {
+            previous += readVarLong(in);
+            ids[i] = (int) previous;
+        }
+        return ids;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("checkpoint is corrupt");
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ConcurrentRingBuffer.java
+ * This class represents a bounded, lock-free ring buffer for many producers and a single consumer.
+ * Each slot carries a sequence number that tells producers and the consumer whose turn it is,
+ * so offering and polling only need one CAS on the producer side and none on the consumer side.
+ */
+public class ConcurrentRingBuffer<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail; // next position to be claimed by a producer
+    private volatile long head;    // next position to be read by the consumer
+
+    /**
+     * Constructor for ConcurrentRingBuffer
+     * @param capacity Requested capacity, rounded up to the next power of two
+     */
+    public ConcurrentRingBuffer(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong(0);
+        this.head = 0;
+    }
+
+    /**
+     * Add an item to the buffer without blocking (any thread)
+     * @param item Item to add, must not be null
+     * @return true if added, false if the buffer is full
+     */
+    public boolean offer(T item) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, item);
+                    sequences.set(index, position + 1); // publish to the consumer
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false; // slot still holds an item from the previous lap
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest item from the buffer (consumer thread only)
+     * @return The item, or null if the buffer is empty
+     */
+    public T poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        T item = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, position + mask + 1); // hand the slot back to producers
+        head = position + 1;
+        return item;
+    }
+
+    /**
+     * Move up to maxItems items into a batch (consumer thread only)
+     * @param batch List that receives the items in FIFO order
+     * @param maxItems Maximum number of items to move
+     * @return Number of items moved
+     */
+    public int drainTo(MyArrayList<T> batch, int maxItems) {
+        int count = 0;
+        T item;
+        while (count < maxItems && (item = poll()) != null) {
+            batch.add(item);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Approximate number of items in the buffer
+     * @return int
+     */
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Check if the buffer is empty
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get the capacity of the buffer
+     * @return int
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -1,86 +1,265 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Desk.java
  * This class represents a desk in the polling station.
  * It has a queue of voters waiting to get approval to vote (that just arrived).
- * The desk is assigned to a poll clerk, which uses it to manage entering voters
+ * The desk is assigned to one or more poll clerks, which share it to manage entering voters
+ * While a checkpoint is taken the desk is paused: clerks finish the voter they are checking
+ * and don't take the next one, so the queue holds still and can be copied
  */
 public class Desk {
     private GenericFIFO<Voter> deskQueue;
-    private PollClerk pollClerk;
+    private MyArrayList<PollClerk> pollClerks;
+    private boolean isClosed;
+    private boolean isPaused;
+    private int votersBeingChecked; // taken from the queue, clerk not done with them yet
     private Logger logger;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition checksDone; // no clerk is checking a voter
 
     /**
      * Constructor for Desk
      */
     public Desk(PollClerk pollClerk){
-        this.pollClerk = pollClerk;
+        this.pollClerks = new MyArrayList<PollClerk>();
+        if(pollClerk != null){
+            this.pollClerks.add(pollClerk);
+        }
+        this.isClosed = false;
         this.deskQueue = new GenericFIFO<Voter>();
         this.logger = Logger.getInstance("log.txt");
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.checksDone = lock.newCondition();
     }
 
     /**
      * Add a voter to the Desk queue
      * @param v Voter to be added to the queue
+     * @return true if the voter entered, false if the station was closed
      */
-    public void enterDeskQueue(Voter v, PollingStation pollingStation){
-        synchronized(pollingStation){
-            while(pollingStation.getStationCapacity() <= pollingStation.getCurrentVoters() && pollingStation.pollingStationIsOpen()){ //wait for space inside polling station
+    public boolean enterDeskQueue(Voter v, PollingStation pollingStation){
+        long waitStart = StageTimings.now();
+        try{
+            if(!pollingStation.enter(v)){ //when the station closes, voters will not enter the desk queue and will leave
+                //System.out.println("-------------- REJECTED");
+                logger.log("Voter " + v.getVoterId() + " can't enter Desk, Election Day Over");
+                return false;
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            logger.log("Voter " + v.getVoterId() + " was interrupted while waiting for space at the polling station");
+            return false;
+        }
+        StageTimings.record(StageTimings.Stage.STATION_ENTRY, waitStart);
+        lock.lock();
+        try{
+            if(!isClosed){
+                //System.out.println("- Voter " + v.getVoterId() + " entering queue, " + pollingStation.getStationCapacity());
+                logger.log("- Voter " + v.getVoterId() + " entering queue, " + pollingStation.getStationCapacity());
+                v.setDeskQueuedAt(StageTimings.now());
+                deskQueue.enQueue(v);
+                notEmpty.signal(); //notify that Desk is not empty
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        //station closed between letting the voter in and reaching the desk, no clerk would drain it
+        logger.log("Voter " + v.getVoterId() + " can't enter Desk, Election Day Over");
+        pollingStation.decrementCurrentVoters(); //the voter was already counted in
+        return false;
+    }
+
+    /**
+     * Remove a voter from the Desk queue, the clerk calls doneChecking once it decided on the voter
+     * @return Removed voter, or null if the desk is closed and empty (or on interrupt)
+     */
+    public Voter exitDeskQueue(){
+        lock.lock();
+        try{
+            while(deskQueue.isEmpty() || isPaused){
+                if(isClosed && !isPaused){
+                    return null;
+                }
                 try{
-                    //System.out.println("Voter " + v.getVoterId() + " Waiting for space to enter at polling Station");
-                    logger.log("Voter " + v.getVoterId() + " Waiting for space to enter at polling Station");
-                    pollingStation.wait();
+                    notEmpty.await();
                 } catch (InterruptedException e){
+                    logger.log("Desk was interrupted while waiting for voters.");
                     Thread.currentThread().interrupt();
-                    e.printStackTrace();
+                    return null;
                 }
             }
-        }    
-        synchronized(v){
-            if(!pollingStation.pollingStationIsOpen()){//when the station closes, voters will not enter the desk queue and will leave
-                //System.out.println("-------------- REJECTED");
-                logger.log("Voter " + v.getVoterId() + " can't enter Desk, Election Day Over");
-                v.notify();
-                return;
+
+            Voter v = deskQueue.deQueue();
+            if(v != null){
+                votersBeingChecked++;
+                StageTimings.record(StageTimings.Stage.DESK_QUEUE, v.getDeskQueuedAt());
+                logger.log("Voter " + v.getVoterId() + " exiting desk queue");
             }
+            return v;
+        } finally {
+            lock.unlock();
         }
-        pollingStation.incrementCurrentVoters();
-        synchronized( this){
-            //System.out.println("- Voter " + v.getVoterId() + " entering queue, " + pollingStation.getStationCapacity());
-            logger.log("- Voter " + v.getVoterId() + " entering queue, " + pollingStation.getStationCapacity());
-            deskQueue.enQueue(v);
-            notifyAll(); //notify that Desk is not empty
+    }
+
+    /**
+     * The clerk approved or rejected the voter it took from the queue
+     */
+    public void doneChecking(){
+        lock.lock();
+        try{
+            votersBeingChecked--;
+            if(votersBeingChecked == 0){
+                checksDone.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop handing voters to the clerks, voters can still join the queue
+     */
+    public void pause(){
+        lock.lock();
+        try{
+            isPaused = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand voters to the clerks again after pause
+     */
+    public void resume(){
+        lock.lock();
+        try{
+            isPaused = false;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Remove a voter from the Desk queue
-     * @return Removed voter
+     * Wait until no clerk is checking a voter (the desk should be paused)
+     * @param deadline System.nanoTime() to give up at
+     * @return true if the clerks are done, false on timeout
+     * @throws InterruptedException
      */
-    public synchronized Voter exitDeskQueue(){
-        while(deskQueue.isEmpty()){
-            try{
-                wait();
-            } catch (InterruptedException e){
-                logger.log("Desk was interrupted while waiting for voters.");
-                Thread.currentThread().interrupt();
-                return null;
+    public boolean awaitChecksDone(long deadline) throws InterruptedException{
+        lock.lock();
+        try{
+            while(votersBeingChecked > 0){
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    return false;
+                }
+                checksDone.awaitNanos(remaining);
             }
+            return true;
+        } finally {
+            lock.unlock();
         }
-        
-        Voter v = deskQueue.deQueue();
-        if(v != null){
-            logger.log("Voter " + v.getVoterId() + " exiting desk queue");
+    }
+
+    /**
+     * Get the voters waiting in the queue, in order
+     * @return Voters, front first
+     */
+    public Voter[] getQueuedVoters(){
+        lock.lock();
+        try{
+            Voter[] voters = new Voter[deskQueue.size()];
+            for(int i = 0; i < voters.length; i++){
+                voters[i] = deskQueue.get(i);
+            }
+            return voters;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put back a voter that was waiting in the queue when a checkpoint was taken
+     * (the polling station already counts it in)
+     * @param v
+     */
+    public void restoreVoter(Voter v){
+        lock.lock();
+        try{
+            v.setDeskQueuedAt(StageTimings.now());
+            deskQueue.enQueue(v);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the desk: no more voters enter, and clerks waiting for voters are woken
+     * (they still get the voters already queued)
+     */
+    public void close(){
+        lock.lock();
+        try{
+            isClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
         }
-        notifyAll(); //notify that desk its not full
-        return v;
     }
 
     /**
-     * Get the PollClerk assigned to the Desk
+     * Checks if the Desk was closed
+     * @return true if closed, else false
+     */
+    public boolean isClosed(){
+        lock.lock();
+        try{
+            return isClosed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Assign another PollClerk to the Desk
+     * @param pollClerk
+     */
+    public void addPollClerk(PollClerk pollClerk){
+        lock.lock();
+        try{
+            pollClerks.add(pollClerk);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the PollClerks assigned to the Desk
+     * @return PollClerks
+     */
+    public MyArrayList<PollClerk> getPollClerks(){
+        return pollClerks;
+    }
+
+    /**
+     * Get the (first) PollClerk assigned to the Desk
      * @return PollClerk
      */
     public PollClerk getPollClerk(){
-        return pollClerk;
+        lock.lock();
+        try{
+            return pollClerks.size() == 0 ? null : pollClerks.get(0);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -88,6 +267,11 @@ public class Desk {
      * @return true if empty, else false
      */
     public boolean isEmpty(){
-        return deskQueue.isEmpty();
+        lock.lock();
+        try{
+            return deskQueue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -0,0 +1,467 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * DiscreteEventElection.java
+ * This class simulates the election day without threads and without sleeping.
+ * It follows the same flow as the threaded model (Desk -> PollClerk -> VotingBooth -> ExitPoll
+ * -> Pollster) with the same service time distributions, capacity and voter limit rules, but
+ * time is virtual: a single thread takes the next service completion from an EventCalendar
+ * and jumps the clock straight to it. Moving a voter between queues takes no virtual time,
+ * only the clerk's id check, voting and the interview do.
+ *
+ * Usage: java DiscreteEventElection voters capacity limit [--clerks n] [--booths n] [--speed n] [--seed s]
+ */
+public class DiscreteEventElection {
+    private static final long MILLIS = 1_000_000L; // virtual time is kept in nanoseconds
+
+    // event types
+    private static final int CLERK_DONE = 0;     // subject: clerk
+    private static final int VOTE_DONE = 1;      // subject: booth
+    private static final int INTERVIEW_DONE = 2; // subject: unused (one pollster)
+
+    // same probabilities as Main and Voter
+    private static final double REBORN_PROBABILITY = 0.95;
+    private static final double SELECTION_PROBABILITY = 0.8;
+    private static final double RESPONSE_PROBABILITY = 0.6;
+    private static final double LIE_PROBABILITY = 0.2;
+    private static final int[] PARTY_WEIGHTS = {50, 20, 20, 10};
+
+    private final int numVoters;
+    private final int capacity;
+    private final int voterLimit;
+    private final int speedMultiplier;
+    private final SplittableRandom random;
+    private final EventCalendar calendar;
+    private final VotingParties[] parties;
+
+    // voters, by slot
+    private final int[] voterIds;
+    private final byte[] voterParties;
+
+    // polling station
+    private boolean isOpen;
+    private int currentVoters;
+    private int voterIdOffset;
+    private int voterOffset; // approved voters
+    private final IntHashSet approvedIds;
+    private final IntQueue waitingOutside;
+    private final IntQueue deskQueue;
+    private final int[] clerkServing; // voter slot, -1 if idle
+    private final IntQueue[] boothQueues;
+    private int nextBooth;
+    private final IntQueue exitPollQueue;
+    private boolean pollsterBusy;
+    private int pollsterServing;
+    private boolean exitPollClosed;
+
+    // results
+    private final long[] votes;
+    private long now;
+    private long electionEndTime = -1;
+    private long events;
+    private long rejectedDuplicates;
+    private long rejectedAfterLimit;
+    private long interviews;
+    private long answered;
+    private long lies;
+    private long reborn;
+
+    /**
+     * Constructor for DiscreteEventElection.
+     * @param numVoters Number of voters.
+     * @param capacity Polling station capacity.
+     * @param voterLimit Number of voters approved before the station closes.
+     * @param numClerks Number of poll clerks sharing the desk.
+     * @param numBooths Number of voting booths.
+     * @param speedMultiplier Slow down factor of every service time (as Main.getSpeedMultiplier()).
+     * @param seed Seed of the run, the same seed gives the same election.
+     */
+    public DiscreteEventElection(int numVoters, int capacity, int voterLimit, int numClerks, int numBooths, int speedMultiplier, long seed) {
+        this.numVoters = numVoters;
+        this.capacity = capacity;
+        this.voterLimit = voterLimit;
+        this.speedMultiplier = speedMultiplier;
+        this.random = new SplittableRandom(seed);
+        this.calendar = new EventCalendar(numClerks + numBooths + 2);
+        this.parties = VotingParties.values();
+        this.voterIds = new int[numVoters];
+        this.voterParties = new byte[numVoters];
+        this.approvedIds = new IntHashSet(Math.max(16, voterLimit));
+        this.waitingOutside = new IntQueue(numVoters);
+        this.deskQueue = new IntQueue(capacity);
+        this.clerkServing = new int[Math.max(1, numClerks)];
+        Arrays.fill(clerkServing, -1);
+        this.boothQueues = new IntQueue[Math.max(1, numBooths)];
+        for (int i = 0; i < boothQueues.length; i++) {
+            boothQueues[i] = new IntQueue(capacity);
+        }
+        this.exitPollQueue = new IntQueue(capacity);
+        this.votes = new long[parties.length];
+    }
+
+    /**
+     * Run the election until no event is left.
+     */
+    public void run() {
+        for (int v = 0; v < numVoters; v++) {
+            voterIds[v] = v + 1;
+            voterParties[v] = chooseParty();
+        }
+        voterIdOffset = numVoters;
+        isOpen = true; // the first clerk opens the station at time 0
+        for (int v = 0; v < numVoters; v++) {
+            enter(v);
+        }
+
+        while (calendar.poll()) {
+            now = calendar.getTime();
+            events++;
+            switch (calendar.getType()) {
+                case CLERK_DONE -> clerkDone(calendar.getSubject());
+                case VOTE_DONE -> voteDone(calendar.getSubject());
+                case INTERVIEW_DONE -> interviewDone();
+                default -> throw new IllegalStateException("Unknown event " + calendar.getType());
+            }
+        }
+    }
+
+    /**
+     * A voter arrives at the station (enterDeskQueue), waiting outside while it is full
+     */
+    private void enter(int v) {
+        if (!isOpen) {
+            return; // election day over, the voter goes home
+        }
+        if (currentVoters >= capacity) {
+            waitingOutside.enQueue(v);
+            return;
+        }
+        currentVoters++;
+        deskQueue.enQueue(v);
+        startClerks();
+    }
+
+    /**
+     * A voter leaves the station (decrementCurrentVoters), letting one waiting voter in
+     */
+    private void leave() {
+        currentVoters--;
+        if (isOpen && !waitingOutside.isEmpty()) {
+            currentVoters++;
+            deskQueue.enQueue(waitingOutside.deQueue());
+            startClerks();
+        }
+        if (!isOpen && currentVoters == 0 && electionEndTime < 0) {
+            electionEndTime = now; // the clerk counts the votes
+        }
+    }
+
+    private void close() {
+        isOpen = false;
+        waitingOutside.clear(); // voters waiting for space give up
+    }
+
+    private void startClerks() {
+        for (int c = 0; c < clerkServing.length && !deskQueue.isEmpty(); c++) {
+            if (clerkServing[c] < 0) {
+                clerkServing[c] = deskQueue.deQueue();
+                calendar.schedule(now + serviceTime(5, 10), CLERK_DONE, c); // 5-10ms id check
+            }
+        }
+    }
+
+    /**
+     * The clerk finished checking a voter's id (checkVoterID and admitVoter)
+     */
+    private void clerkDone(int clerk) {
+        int v = clerkServing[clerk];
+        clerkServing[clerk] = -1;
+
+        if (voterOffset >= voterLimit) {
+            rejectedAfterLimit++;
+            rejected(v);
+        } else if (approvedIds.contains(voterIds[v])) {
+            rejectedDuplicates++;
+            rejected(v);
+        } else {
+            approvedIds.add(voterIds[v]);
+            voterOffset++;
+            if (voterOffset == voterLimit) {
+                close();
+            }
+            enterBooth(v);
+        }
+        startClerks();
+    }
+
+    private void rejected(int v) {
+        leave();
+        if (isOpen) {
+            rebornVoter(v);
+            enter(v);
+        }
+    }
+
+    /**
+     * Send an approved voter to the least loaded booth
+     */
+    private void enterBooth(int v) {
+        int start = nextBooth++ % boothQueues.length;
+        int best = start;
+        for (int i = 1; i < boothQueues.length && boothQueues[best].size() > 0; i++) {
+            int b = (start + i) % boothQueues.length;
+            if (boothQueues[b].size() < boothQueues[best].size()) {
+                best = b;
+            }
+        }
+        boothQueues[best].enQueue(v);
+        if (boothQueues[best].size() == 1) {
+            startVote(best);
+        }
+    }
+
+    private void startVote(int booth) {
+        calendar.schedule(now + serviceTime(0, 15), VOTE_DONE, booth); // 0-15ms to vote
+    }
+
+    /**
+     * The voter at the front of a booth cast its vote (castVote and exitBoothQueue)
+     */
+    private void voteDone(int booth) {
+        IntQueue queue = boothQueues[booth];
+        int v = queue.deQueue();
+        votes[voterParties[v]]++;
+
+        if (queue.isEmpty()) {
+            stealVoter(booth);
+        }
+        if (!queue.isEmpty()) {
+            startVote(booth);
+        }
+        leave();
+        exitPoll(v);
+    }
+
+    /**
+     * An idle booth takes the last voter waiting at the busiest booth
+     */
+    private void stealVoter(int idle) {
+        int busiest = -1;
+        for (int b = 0; b < boothQueues.length; b++) {
+            if (b != idle && boothQueues[b].size() >= 2 && (busiest < 0 || boothQueues[b].size() > boothQueues[busiest].size())) {
+                busiest = b;
+            }
+        }
+        if (busiest >= 0) {
+            boothQueues[idle].enQueue(boothQueues[busiest].deQueueLast());
+        }
+    }
+
+    private void exitPoll(int v) {
+        if (exitPollClosed) {
+            rebornVoter(v); // no interview coming
+            enter(v);
+            return;
+        }
+        exitPollQueue.enQueue(v);
+        startInterview();
+    }
+
+    private void startInterview() {
+        if (pollsterBusy || exitPollQueue.isEmpty()) {
+            return;
+        }
+        pollsterBusy = true;
+        pollsterServing = exitPollQueue.deQueue();
+        long duration = 0;
+        if (random.nextDouble() < SELECTION_PROBABILITY) {
+            duration = serviceTime(5, 10); // 5-10ms to respond
+            if (random.nextDouble() < RESPONSE_PROBABILITY) {
+                answered++;
+                if (random.nextDouble() < LIE_PROBABILITY) {
+                    lies++;
+                }
+            }
+        }
+        calendar.schedule(now + duration, INTERVIEW_DONE, 0);
+    }
+
+    /**
+     * The pollster let a voter go (interview)
+     */
+    private void interviewDone() {
+        int v = pollsterServing;
+        pollsterBusy = false;
+        interviews++;
+        if (interviews >= voterLimit) { // the pollster is done and closes the exit poll
+            exitPollClosed = true;
+        }
+        rebornVoter(v);
+        enter(v);
+        startInterview();
+    }
+
+    private void rebornVoter(int v) {
+        voterParties[v] = chooseParty();
+        if (random.nextDouble() <= REBORN_PROBABILITY) {
+            voterIds[v] = ++voterIdOffset;
+            reborn++;
+        }
+    }
+
+    private byte chooseParty() {
+        int value = random.nextInt(100);
+        int cumulative = 0;
+        for (int i = 0; i < PARTY_WEIGHTS.length; i++) {
+            cumulative += PARTY_WEIGHTS[i];
+            if (value < cumulative) {
+                return (byte) i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Draw a service time uniformly between two bounds (as SimulationClock.serviceTime)
+     */
+    private long serviceTime(double minMillis, double maxMillis) {
+        return (long) ((minMillis + random.nextDouble() * (maxMillis - minMillis)) * speedMultiplier * MILLIS);
+    }
+
+    /**
+     * Get the votes cast, as ElectionResults.
+     * @return ElectionResults
+     */
+    public ElectionResults getResults() {
+        ElectionResults results = new ElectionResults();
+        for (int i = 0; i < parties.length; i++) {
+            results.put(parties[i], (int) votes[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Get the virtual time at which the last voter left the closed station.
+     * @return Nanoseconds, -1 if the station never closed.
+     */
+    public long getElectionEndTime() {
+        return electionEndTime;
+    }
+
+    /**
+     * Get the number of events processed.
+     * @return long
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * Log a summary of the run.
+     * @param wallNanos Real time the run took.
+     */
+    public void logSummary(long wallNanos) {
+        Logger logger = Logger.getInstance("log.txt");
+        logger.log("Election Results:");
+        getResults().display();
+        logger.log(String.format("Votes: %d, rejected duplicates: %d, rejected after limit: %d, reborn voters: %d",
+                voterOffset, rejectedDuplicates, rejectedAfterLimit, reborn));
+        logger.log(String.format("Exit poll: %d voters, %d answered, %d lied", interviews, answered, lies));
+        logger.log(String.format("Virtual election time: %.3f s, wall time: %.3f s (%.0fx), %d events (%.1f M events/s)",
+                electionEndTime / 1e9, wallNanos / 1e9, (double) electionEndTime / Math.max(1, wallNanos),
+                events, events * 1e3 / Math.max(1, wallNanos)));
+    }
+
+    /**
+     * IntQueue.
+     * FIFO of voter slots, circular buffer of primitive ints.
+     */
+    private static final class IntQueue {
+        private int[] data;
+        private int head;
+        private int size;
+
+        private IntQueue(int initialCapacity) {
+            data = new int[Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1];
+        }
+
+        private void enQueue(int x) {
+            if (size == data.length) {
+                int[] newData = new int[data.length * 2];
+                for (int i = 0; i < size; i++) {
+                    newData[i] = data[(head + i) & (data.length - 1)];
+                }
+                data = newData;
+                head = 0;
+            }
+            data[(head + size) & (data.length - 1)] = x;
+            size++;
+        }
+
+        private int deQueue() {
+            int x = data[head];
+            head = (head + 1) & (data.length - 1);
+            size--;
+            return x;
+        }
+
+        private int deQueueLast() {
+            size--;
+            return data[(head + size) & (data.length - 1)];
+        }
+
+        private void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private int size() {
+            return size;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java DiscreteEventElection voters capacity limit [--clerks n] [--booths n] [--speed n] [--seed s]");
+            System.exit(1);
+        }
+        int numVoters = Integer.parseInt(args[0]);
+        int capacity = Integer.parseInt(args[1]);
+        int voterLimit = Integer.parseInt(args[2]);
+        int numClerks = 1;
+        int numBooths = 1;
+        int speed = 1;
+        long seed = RunSeed.get();
+        for (int i = 3; i + 1 < args.length; i++) {
+            switch (args[i]) {
+                case "--clerks" -> numClerks = Math.max(1, Integer.parseInt(args[++i]));
+                case "--booths" -> numBooths = Math.max(1, Integer.parseInt(args[++i]));
+                case "--speed" -> speed = Math.max(1, Integer.parseInt(args[++i]));
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> { }
+            }
+        }
+
+        Logger logger = Logger.getInstance("log.txt");
+        logger.log("Discrete-event election, run seed: " + seed + " (re-run with --seed " + seed + ")");
+        DiscreteEventElection election = new DiscreteEventElection(numVoters, capacity, voterLimit, numClerks, numBooths, speed, seed);
+        long start = System.nanoTime();
+        election.run();
+        long wall = System.nanoTime() - start;
+        election.logSummary(wall);
+
+        ElectionResults results = election.getResults();
+        for (VotingParties party : VotingParties.values()) {
+            System.out.println(party + " : " + results.get(party));
+        }
+        System.out.printf("Virtual election time %.3f s, simulated in %.3f s (%d events)%n",
+                election.getElectionEndTime() / 1e9, wall / 1e9, election.getEvents());
+        System.out.println("Written all logs to \"log.txt\" file");
+        logger.close();
+    }
+}
@@ -0,0 +1,391 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ElectionAggregator.java
+ * This class combines the polling stations of a multi-station election.
+ * It hands out voter ids that are unique across stations (taken from blocks the server hands
+ * each process when there is one), detects a voter id approved at two
+ * different stations, and merges each station's ElectionResults into the global results
+ * as soon as that station finishes counting.
+ * Voter ids are kept in lock-striped IntHashSets so hundreds of stations can claim ids in parallel.
+ * The same class backs the AggregationServer, which feeds it the claims and vote deltas of
+ * stations running in other processes; a station-side aggregator can in turn forward to the
+ * server through an AggregationClient, streaming each station's votes as deltas of its live tally
+ * while it votes and a last delta when it finishes.
+ */
+public class ElectionAggregator {
+    private static final int STRIPES = 64; // power of two
+
+    private final int numStations;
+    private final PollingStation[] stations;
+    private final ExitPoll[] exitPolls;
+    private final AtomicInteger registeredStations;
+    private final IntHashSet[] votedIds;
+    private final ReentrantLock[] stripeLocks;
+    private final AtomicInteger nextVoterId;
+    private final ReentrantLock voterIdLock; // taking a new block of ids from the server
+    private int voterIdLimit;                // last id of the current block
+    private final AtomicInteger crossStationDuplicates;
+    private final ElectionResults[] stationResults;
+    private final boolean[] stationDone;
+    private final ElectionResults globalResults;
+    private final ReentrantLock resultsLock;
+    private final Condition allReported;
+    private int stationsReported;
+    private AggregationClient upstream; // national aggregation server, null if this is the top level
+    private final ReentrantLock upstreamLock;       // deltas of a station go out in order, none after its last
+    private final ElectionResults[] sentUpstream;   // votes of each station sent to the server so far
+    private final boolean[] upstreamDone;           // the station's last delta was sent
+    private Logger logger;
+
+    /**
+     * Constructor for ElectionAggregator.
+     * @param numStations Number of polling stations taking part.
+     */
+    public ElectionAggregator(int numStations) {
+        this.numStations = numStations;
+        this.stations = new PollingStation[numStations];
+        this.exitPolls = new ExitPoll[numStations];
+        this.registeredStations = new AtomicInteger();
+        this.votedIds = new IntHashSet[STRIPES];
+        this.stripeLocks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            votedIds[i] = new IntHashSet();
+            stripeLocks[i] = new ReentrantLock();
+        }
+        this.nextVoterId = new AtomicInteger();
+        this.voterIdLock = new ReentrantLock();
+        this.voterIdLimit = 0;
+        this.crossStationDuplicates = new AtomicInteger();
+        this.stationResults = new ElectionResults[numStations];
+        this.stationDone = new boolean[numStations];
+        this.globalResults = new ElectionResults();
+        this.resultsLock = new ReentrantLock();
+        this.allReported = resultsLock.newCondition();
+        this.stationsReported = 0;
+        this.upstreamLock = new ReentrantLock();
+        this.sentUpstream = new ElectionResults[numStations];
+        this.upstreamDone = new boolean[numStations];
+        this.logger = Logger.getInstance("log.txt");
+    }
+
+    /**
+     * Forward claims and results to an aggregation server, which checks voter ids
+     * against the stations of other processes.
+     * @param upstream Client connected to the server.
+     */
+    public void setUpstream(AggregationClient upstream) {
+        this.upstream = upstream;
+    }
+
+    /**
+     * Add a polling station to the election.
+     * @param station The polling station.
+     * @param exitPoll The exit poll outside the station.
+     * @return Id of the station (1..number of stations).
+     */
+    public int registerStation(PollingStation station, ExitPoll exitPoll) {
+        int stationId = registeredStations.incrementAndGet();
+        if (stationId > numStations) {
+            throw new IllegalStateException("Election only has " + numStations + " stations");
+        }
+        stations[stationId - 1] = station;
+        exitPolls[stationId - 1] = exitPoll;
+        station.setAggregator(this, stationId);
+        return stationId;
+    }
+
+    /**
+     * Get a polling station by id.
+     * @param stationId The station.
+     * @return PollingStation
+     */
+    public PollingStation getStation(int stationId) {
+        return stations[stationId - 1];
+    }
+
+    /**
+     * Get the exit poll of a polling station.
+     * @param stationId The station.
+     * @return ExitPoll
+     */
+    public ExitPoll getExitPoll(int stationId) {
+        return exitPolls[stationId - 1];
+    }
+
+    /**
+     * Get a voter id that no other station uses.
+     * @return Voter id.
+     */
+    public int nextVoterId() {
+        if (upstream == null) {
+            return nextVoterId.incrementAndGet();
+        }
+        voterIdLock.lock();
+        try {
+            if (voterIdLimit != Integer.MAX_VALUE && nextVoterId.get() >= voterIdLimit) {
+                int first = upstream.leaseVoterIds(AggregationProtocol.VOTER_ID_BLOCK);
+                if (first == 0) {
+                    voterIdLimit = Integer.MAX_VALUE; // server gone, nobody else checks the ids now
+                } else {
+                    nextVoterId.set(first - 1);
+                    voterIdLimit = first - 1 + AggregationProtocol.VOTER_ID_BLOCK;
+                }
+            }
+            return nextVoterId.incrementAndGet();
+        } finally {
+            voterIdLock.unlock();
+        }
+    }
+
+    /**
+     * Register that a station approved a voter id.
+     * The station already rejects ids it approved itself, so a second claim of the same id
+     * can only come from another station.
+     * @param stationId The station approving the voter.
+     * @param voterId The voter id.
+     * @return True if the id had not voted anywhere, false if it already voted at another station.
+     */
+    public boolean claimVoter(int stationId, int voterId) {
+        int stripe = (voterId * 0x9E3779B9 >>> 16) & (STRIPES - 1);
+        boolean claimed;
+        stripeLocks[stripe].lock();
+        try {
+            claimed = votedIds[stripe].add(voterId);
+        } finally {
+            stripeLocks[stripe].unlock();
+        }
+        if (claimed && upstream != null && !upstream.claimVoter(stationId, voterId)) {
+            claimed = false; // voted at a station of another process, the id stays taken here too
+        }
+        if (!claimed) {
+            crossStationDuplicates.incrementAndGet();
+            logger.log("! Voter " + voterId + " already voted at another station, rejected at station " + stationId);
+        }
+        return claimed;
+    }
+
+    /**
+     * Get the last voter id handed out, without taking a new one.
+     * @return Voter id.
+     */
+    public int getLastVoterId() {
+        return nextVoterId.get();
+    }
+
+    /**
+     * Restore the ids taken before a checkpoint, before any station opens.
+     * @param lastVoterId Last voter id handed out.
+     * @param claimedIds Ids approved at any station.
+     */
+    public void restoreVoterIds(int lastVoterId, int[] claimedIds) {
+        nextVoterId.accumulateAndGet(lastVoterId, Math::max);
+        for (int voterId : claimedIds) {
+            int stripe = (voterId * 0x9E3779B9 >>> 16) & (STRIPES - 1);
+            stripeLocks[stripe].lock();
+            try {
+                votedIds[stripe].add(voterId);
+            } finally {
+                stripeLocks[stripe].unlock();
+            }
+        }
+    }
+
+    /**
+     * Add votes of a station to its results and to the global results.
+     * @param stationId The station.
+     * @param delta Votes counted since the station's previous delta.
+     */
+    public void addVotes(int stationId, ElectionResults delta) {
+        resultsLock.lock();
+        try {
+            if (stationDone[stationId - 1]) {
+                return;
+            }
+            if (stationResults[stationId - 1] == null) {
+                stationResults[stationId - 1] = new ElectionResults();
+            }
+            stationResults[stationId - 1].merge(delta);
+            globalResults.merge(delta);
+        } finally {
+            resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Send the server the votes of a station counted since the last delta, from a snapshot of its
+     * live tally (called by the LiveTally publisher). Does nothing without a server
+     * @param stationId The station.
+     * @param tally Snapshot of the station's live tally.
+     */
+    public void streamVotes(int stationId, TallySnapshot tally) {
+        if (upstream == null) {
+            return;
+        }
+        ElectionResults counted = new ElectionResults();
+        counted.processVotes(tally);
+        sendUpstream(stationId, counted, false);
+    }
+
+    /**
+     * Merge the results of a station that finished counting into the global results.
+     * @param stationId The station.
+     * @param results The station's results.
+     */
+    public void stationFinished(int stationId, ElectionResults results) {
+        addVotes(stationId, results);
+        if (upstream != null) {
+            sendUpstream(stationId, results, true);
+        }
+        stationFinished(stationId);
+    }
+
+    /**
+     * Send the server what a station counted beyond the votes already sent
+     * @param stationId The station.
+     * @param counted Every vote of the station so far.
+     * @param last True for the station's final results, later deltas are ignored.
+     */
+    private void sendUpstream(int stationId, ElectionResults counted, boolean last) {
+        upstreamLock.lock();
+        try {
+            if (upstreamDone[stationId - 1]) {
+                return;
+            }
+            upstreamDone[stationId - 1] = last;
+            ElectionResults sent = sentUpstream[stationId - 1];
+            if (sent == null) {
+                sent = new ElectionResults();
+                sentUpstream[stationId - 1] = sent;
+            }
+            ElectionResults delta = new ElectionResults();
+            boolean changed = false;
+            for (VotingParties party : VotingParties.values()) {
+                int votes = counted.get(party) - sent.get(party); // counts only grow, a snapshot never goes back
+                delta.put(party, votes);
+                changed |= votes != 0;
+            }
+            if (changed) {
+                upstream.sendVoteDelta(stationId, delta);
+                sent.merge(delta);
+            }
+        } finally {
+            upstreamLock.unlock();
+        }
+    }
+
+    /**
+     * Mark a station as done, after all its votes were added with addVotes.
+     * @param stationId The station.
+     */
+    public void stationFinished(int stationId) {
+        resultsLock.lock();
+        try {
+            if (stationDone[stationId - 1]) {
+                return;
+            }
+            stationDone[stationId - 1] = true;
+            stationsReported++;
+            logger.log("Global Election Results (" + stationsReported + " of " + numStations + " stations reported):");
+            globalResults.display();
+            if (stationsReported == numStations) {
+                logger.log("Cross-station duplicate voters rejected: " + crossStationDuplicates.get());
+                allReported.signalAll();
+            }
+        } finally {
+            resultsLock.unlock();
+        }
+        if (upstream != null) {
+            upstream.stationFinished(stationId);
+        }
+    }
+
+    /**
+     * Check whether a station was marked as done.
+     * @param stationId The station.
+     * @return boolean
+     */
+    public boolean isStationFinished(int stationId) {
+        resultsLock.lock();
+        try {
+            return stationDone[stationId - 1];
+        } finally {
+            resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until every station reported its results.
+     * @throws InterruptedException
+     */
+    public void awaitAllStations() throws InterruptedException {
+        resultsLock.lock();
+        try {
+            while (stationsReported < numStations) {
+                allReported.await();
+            }
+        } finally {
+            resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Get a copy of the global results so far.
+     * @return ElectionResults
+     */
+    public ElectionResults getGlobalResults() {
+        resultsLock.lock();
+        try {
+            ElectionResults copy = new ElectionResults();
+            copy.merge(globalResults);
+            return copy;
+        } finally {
+            resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Get the results of one station.
+     * @param stationId The station.
+     * @return ElectionResults, or null if the station hasn't finished counting.
+     */
+    public ElectionResults getStationResults(int stationId) {
+        resultsLock.lock();
+        try {
+            return stationDone[stationId - 1] ? stationResults[stationId - 1] : null;
+        } finally {
+            resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of voters rejected because they voted at another station.
+     * @return int
+     */
+    public int getCrossStationDuplicates() {
+        return crossStationDuplicates.get();
+    }
+
+    /**
+     * Get the number of stations that already reported their results.
+     * @return int
+     */
+    public int getStationsReported() {
+        resultsLock.lock();
+        try {
+            return stationsReported;
+        } finally {
+            resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of stations taking part.
+     * @return int
+     */
+    public int getNumStations() {
+        return numStations;
+    }
+}
@@ -66,6 +66,60 @@ class ElectionResults {
         }
     }
 
+    /**
+     * Add the votes recorded by a counter to the vote counts, O(parties).
+     * @param votes The vote counter to process.
+     * @throws ArithmeticException if a party's count no longer fits in an int
+     */
+    public void processVotes(StripedVoteCounter votes) {
+        for (int i = 0; i < keys.length; i++) {
+            voteCounts[i] = Math.toIntExact(voteCounts[i] + votes.count(keys[i])); // more votes than an int holds fail, not wrap
+        }
+    }
+
+    /**
+     * Count the ballots of a store and add them to the vote counts (a recount).
+     * @param ballots The ballots to process.
+     */
+    public void processVotes(BallotStore ballots) {
+        long[] counts = ballots.count();
+        for (int i = 0; i < keys.length; i++) {
+            voteCounts[i] = Math.toIntExact(voteCounts[i] + counts[i]);
+        }
+    }
+
+    /**
+     * Add the vote counts of a tally snapshot to the vote counts, O(parties).
+     * @param tally The snapshot to process.
+     */
+    public void processVotes(TallySnapshot tally) {
+        for (int i = 0; i < keys.length; i++) {
+            voteCounts[i] = Math.toIntExact(voteCounts[i] + tally.get(keys[i]));
+        }
+    }
+
+    /**
+     * Add the vote counts of other results (e.g. another station's) to these.
+     * @param other The results to add.
+     */
+    public void merge(ElectionResults other) {
+        for (int i = 0; i < keys.length; i++) {
+            voteCounts[i] = Math.addExact(voteCounts[i], other.voteCounts[i]);
+        }
+    }
+
+    /**
+     * Get the total number of votes.
+     * @return The sum of the vote counts of all parties.
+     */
+    public long getTotal() {
+        long total = 0;
+        for (int count : voteCounts) {
+            total += count;
+        }
+        return total;
+    }
+
     /**
      * Display the vote counts for all parties.
      */
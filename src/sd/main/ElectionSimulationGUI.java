@@ -1,7 +1,8 @@
 import java.awt.*;
 import java.awt.event.*;
-import java.util.*;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 /**
  * ElectionSimulationGUI.java
  * This class represents the graphical user interface for the election simulation.
@@ -10,19 +11,23 @@ import javax.swing.*;
  * - The state of the poll clerk, pollster, and polling station.
  * - The number of voters inside the polling station, processed voters, and remaining voters.
  * - A log area to display simulation events.
- * The GUI is updated in real-time as the simulation progresses.
+ * The actors only record their latest state (voters in a VoterStateBoard, the rest in volatile
+ * fields); a Swing timer applies it a fixed number of times per second, so a burst of updates costs
+ * one repaint per frame. Voters are drawn as state-colored cells, and only the visible ones.
  */
 
-public class ElectionSimulationGUI extends JFrame {
+public class ElectionSimulationGUI extends JFrame implements SimulationObserver {
     private JTextArea logArea;
-    private JPanel voterPanel;
-    private Map<Integer, JLabel> voterLabels;
+    private LogView logView;
+    private VoterCanvas voterPanel;
+    private final VoterStateBoard voterStates = new VoterStateBoard();
     private JLabel pollClerkLabel;
     private JLabel pollsterLabel;
     private JLabel pollingStationLabel;
     private JLabel votersInsideLabel;
     private JLabel votersProcessedLabel;
     private JLabel votersRemainingLabel;
+    private JLabel tallyLabel;
     private JButton stopButton;
     private static final Color COLOR_WAITING = Color.YELLOW;
     private static final Color COLOR_APPROVED = Color.GREEN;
@@ -30,12 +35,51 @@ public class ElectionSimulationGUI extends JFrame {
     private static final Color COLOR_REJECTED = Color.RED;
     private static final Color COLOR_REBORN = new Color(128, 0, 128); // Purple
     private static final Color COLOR_TERMINATED = Color.GRAY;
+    private static final Color COLOR_LEFT = Color.ORANGE;
+    private static final Color[] STATE_COLORS = {
+        Color.WHITE, COLOR_WAITING, COLOR_APPROVED, COLOR_VOTED, COLOR_REJECTED, COLOR_REBORN, COLOR_LEFT, COLOR_TERMINATED
+    };
+
+    // Icons are read from disk once, not per voter
+    private static final ImageIcon VOTER_ICON = new ImageIcon("voter.png");
+    private static final ImageIcon POLL_CLERK_ICON = new ImageIcon("poll_clerk.png");
+    private static final ImageIcon POLLSTER_ICON = new ImageIcon("pollster.png");
+    private static final ImageIcon POLLING_STATION_ICON = new ImageIcon("polling_station.png");
+
+    private static final int FRAMES_PER_SECOND = 30;
+    private static final int LABELED_VOTERS = 40; // up to this many voters get an icon and their state written out
+    private static final int CELL_SIZE = 10;      // pixels of a voter cell in larger elections
+
+    // Latest values reported by the actors, applied by the frame timer
+    private volatile String pollClerkState;
+    private volatile String pollsterState;
+    private volatile String pollingStationState;
+    private volatile int votersInside = -1;
+    private volatile int votersProcessed = -1;
+    private volatile int votersRemaining = -1;
+    private volatile TallySnapshot tally;
+    private String shownPollClerkState;
+    private String shownPollsterState;
+    private String shownPollingStationState;
+    private int shownVotersInside = -1;
+    private int shownVotersProcessed = -1;
+    private int shownVotersRemaining = -1;
+    private TallySnapshot shownTally;
+    private int shownVersion = -1;
 
     /**
      * Constructor for ElectionSimulationGUI.
      * Initializes the GUI components and sets up the layout.
      */
     public ElectionSimulationGUI() {
+        this(LogView.DEFAULT_MAX_LINES);
+    }
+
+    /**
+     * Constructor for ElectionSimulationGUI.
+     * @param maxLogLines Most log lines kept on screen (the log file keeps all of them)
+     */
+    public ElectionSimulationGUI(int maxLogLines) {
         setTitle("Election Day Simulation");
         setSize(1200, 800);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -44,7 +88,34 @@ public class ElectionSimulationGUI extends JFrame {
         // Log area to display simulation events
         logArea = new JTextArea();
         logArea.setEditable(false);
-        JScrollPane scrollPane = new JScrollPane(logArea);
+        logView = new LogView(logArea, maxLogLines);
+
+        // Filter for the log, by voter ID or any text (e.g. "Pollster")
+        JTextField logFilter = new JTextField();
+        logFilter.setToolTipText("Voter ID or text to look for, empty for every line");
+        logFilter.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                logView.setFilter(logFilter.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                logView.setFilter(logFilter.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                logView.setFilter(logFilter.getText());
+            }
+        });
+        JPanel filterPanel = new JPanel(new BorderLayout());
+        filterPanel.add(new JLabel("Filter: "), BorderLayout.WEST);
+        filterPanel.add(logFilter, BorderLayout.CENTER);
+
+        JPanel logPanel = new JPanel(new BorderLayout());
+        logPanel.add(filterPanel, BorderLayout.NORTH);
+        logPanel.add(new JScrollPane(logArea), BorderLayout.CENTER);
 
         // Create pane to divide areas
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
@@ -54,27 +125,27 @@ public class ElectionSimulationGUI extends JFrame {
         //Panel to display voters and status
         JPanel simulationPanel = new JPanel(new BorderLayout());
 
-        // Panel to display voters
-        voterPanel = new JPanel();
-        voterPanel.setLayout(new GridLayout(0, 2)); // Two columns for voters
-        voterLabels = new HashMap<>();
+        // Panel to display voters, scrollable when they don't fit
+        voterPanel = new VoterCanvas();
+        JScrollPane voterScrollPane = new JScrollPane(voterPanel);
+        voterScrollPane.getViewport().addChangeListener(e -> voterPanel.refresh()); // columns change with the width
 
         // Panel to display poll clerk, pollster, and polling station
         JPanel statusPanel = new JPanel();
         statusPanel.setLayout(new GridLayout(3, 1));
 
         // Poll Clerk
-        pollClerkLabel = new JLabel("Poll Clerk: Idle", new ImageIcon("poll_clerk.png"), SwingConstants.LEFT);
+        pollClerkLabel = new JLabel("Poll Clerk: Idle", POLL_CLERK_ICON, SwingConstants.LEFT);
         pollClerkLabel.setVerticalTextPosition(SwingConstants.BOTTOM);
         pollClerkLabel.setHorizontalTextPosition(SwingConstants.CENTER);
 
         // Pollster
-        pollsterLabel = new JLabel("Pollster: Idle", new ImageIcon("pollster.png"), SwingConstants.LEFT);
+        pollsterLabel = new JLabel("Pollster: Idle", POLLSTER_ICON, SwingConstants.LEFT);
         pollsterLabel.setVerticalTextPosition(SwingConstants.BOTTOM);
         pollsterLabel.setHorizontalTextPosition(SwingConstants.CENTER);
 
         // Polling Station
-        pollingStationLabel = new JLabel("Polling Station: Closed", new ImageIcon("polling_station.png"), SwingConstants.LEFT);
+        pollingStationLabel = new JLabel("Polling Station: Closed", POLLING_STATION_ICON, SwingConstants.LEFT);
         pollingStationLabel.setVerticalTextPosition(SwingConstants.BOTTOM);
         pollingStationLabel.setHorizontalTextPosition(SwingConstants.CENTER);
 
@@ -84,6 +155,7 @@ public class ElectionSimulationGUI extends JFrame {
         votersInsideLabel = new JLabel("Voters inside: 0", SwingConstants.LEFT);
         votersProcessedLabel = new JLabel("Voters processed: 0", SwingConstants.LEFT);
         votersRemainingLabel = new JLabel("Voters remaining: 0", SwingConstants.LEFT);
+        tallyLabel = new JLabel("Live tally: no votes yet", SwingConstants.LEFT);
 
         // Stop button
         stopButton = new JButton("Stop Simulation");
@@ -100,22 +172,30 @@ public class ElectionSimulationGUI extends JFrame {
         statsPanel.add(votersRemainingLabel);
         statsPanel.add(stopButton);
 
+        // Live tally, a row of its own under the statistics so it doesn't change their grid
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(statsPanel, BorderLayout.CENTER);
+        southPanel.add(tallyLabel, BorderLayout.SOUTH);
+
         statusPanel.add(pollClerkLabel);
         statusPanel.add(pollsterLabel);
         statusPanel.add(pollingStationLabel);
 
-        simulationPanel.add(voterPanel, BorderLayout.CENTER); 
+        simulationPanel.add(voterScrollPane, BorderLayout.CENTER); 
         simulationPanel.add(statusPanel, BorderLayout.EAST); 
-        simulationPanel.add(statsPanel, BorderLayout.SOUTH);
+        simulationPanel.add(southPanel, BorderLayout.SOUTH);
         
         splitPane.setLeftComponent(simulationPanel);
-        splitPane.setRightComponent(scrollPane);
+        splitPane.setRightComponent(logPanel);
 
         add(splitPane, BorderLayout.CENTER);
 
         setVisible(true);
 
-        
+        // Apply the latest state a fixed number of times per second
+        Timer frameTimer = new Timer(1000 / FRAMES_PER_SECOND, e -> refresh());
+        frameTimer.setCoalesce(true);
+        frameTimer.start();
     }
 
     /**
@@ -124,33 +204,7 @@ public class ElectionSimulationGUI extends JFrame {
      * @param state The new state of the voter.
      */
     public void updateVoterState(int voterId, String state) {
-        SwingUtilities.invokeLater(() -> {
-            JLabel voterLabel = voterLabels.get(voterId);
-            if (voterLabel == null) {
-                voterLabel = new JLabel("Voter " + voterId + ": " + state, new ImageIcon("voter.png"), SwingConstants.LEFT);
-                voterLabel.setVerticalTextPosition(SwingConstants.BOTTOM);
-                voterLabel.setHorizontalTextPosition(SwingConstants.CENTER);
-                voterLabel.setOpaque(true); // Enable background color
-                voterLabels.put(voterId, voterLabel);
-                voterPanel.add(voterLabel);
-            } else {
-                voterLabel.setText("Voter " + voterId + ": " + state);
-            }
-    
-            // Set background color based on state
-            switch (state) {
-                case "Waiting to enter", "Entering polling station" -> voterLabel.setBackground(COLOR_WAITING);
-                case "Approved and voting" -> voterLabel.setBackground(COLOR_APPROVED);
-                case "Voted and exiting" -> voterLabel.setBackground(COLOR_VOTED);
-                case "Rejected by poll clerk and left polling station" -> voterLabel.setBackground(COLOR_REJECTED);
-                case "Voter Reborn", "Reborn and re-entering" -> voterLabel.setBackground(COLOR_REBORN);
-                case "Terminated" -> voterLabel.setBackground(COLOR_TERMINATED);
-                default -> voterLabel.setBackground(Color.WHITE);
-            }
-    
-            voterPanel.revalidate();
-            voterPanel.repaint();
-        });
+        voterStates.set(voterId, VoterStateBoard.codeOf(state));
     }
 
     /**
@@ -158,15 +212,7 @@ public class ElectionSimulationGUI extends JFrame {
      * @param state The new state of the poll clerk.
      */
     public void updatePollClerkState(String state) {
-        SwingUtilities.invokeLater(() -> {
-            pollClerkLabel.setText("Poll Clerk: " + state);
-            // Set background color based on state
-            switch (state) {
-                case "Processing voters" -> pollClerkLabel.setBackground(Color.GREEN);
-                case "Election ended" -> pollClerkLabel.setBackground(Color.RED);
-                default -> pollClerkLabel.setBackground(Color.WHITE);
-            }
-        });
+        pollClerkState = state;
     }
 
     /**
@@ -174,15 +220,7 @@ public class ElectionSimulationGUI extends JFrame {
      * @param state The new state of the pollster.
      */
     public void updatePollsterState(String state) {
-        SwingUtilities.invokeLater(() -> {
-            pollsterLabel.setText("Pollster: " + state);
-            // Set background color based on state
-            switch (state) {
-                case "Interviewing voters" -> pollsterLabel.setBackground(Color.BLUE);
-                case "Idle" -> pollsterLabel.setBackground(Color.GRAY);
-                default -> pollsterLabel.setBackground(Color.WHITE);
-            }
-        });
+        pollsterState = state;
     }
 
     /**
@@ -190,15 +228,7 @@ public class ElectionSimulationGUI extends JFrame {
      * @param state The new state of the polling station.
      */
     public void updatePollingStationState(String state) {
-        SwingUtilities.invokeLater(() -> {
-            pollingStationLabel.setText("Polling Station: " + state);
-            // Set background color based on state
-            switch (state) {
-                case "Open" -> pollingStationLabel.setBackground(Color.GREEN);
-                case "Closed" -> pollingStationLabel.setBackground(Color.RED);
-                default -> pollingStationLabel.setBackground(Color.WHITE);
-            }
-        });
+        pollingStationState = state;
     }
 
     /**
@@ -206,9 +236,7 @@ public class ElectionSimulationGUI extends JFrame {
      * @param count The new number of voters inside the polling station.
      */
     public void updateVotersInside(int count) {
-        SwingUtilities.invokeLater(() -> {
-            votersInsideLabel.setText("Voters inside: " + count);
-        });
+        votersInside = count;
     }
 
     /**
@@ -216,9 +244,7 @@ public class ElectionSimulationGUI extends JFrame {
      * @param count The new number of voters processed.
      */
     public void updateVotersProcessed(int count) {
-        SwingUtilities.invokeLater(() -> {
-            votersProcessedLabel.setText("Voters processed: " + count);
-        });
+        votersProcessed = count;
     }
 
     /**
@@ -226,9 +252,83 @@ public class ElectionSimulationGUI extends JFrame {
      * @param count The new number of voters remaining.
      */
     public void updateVotersRemaining(int count) {
-        SwingUtilities.invokeLater(() -> {
+        votersRemaining = count;
+    }
+
+    /**
+     * Update the live standings in the GUI.
+     * @param tally Votes of every party so far.
+     */
+    public void updateTally(TallySnapshot tally) {
+        this.tally = tally;
+    }
+
+    /**
+     * Apply the values reported since the last frame (on the Swing thread).
+     * Unchanged labels aren't touched, and the voters are only repainted if one changed.
+     */
+    private void refresh() {
+        String state = pollClerkState;
+        if (state != null && !state.equals(shownPollClerkState)) {
+            shownPollClerkState = state;
+            pollClerkLabel.setText("Poll Clerk: " + state);
+            // Set background color based on state
+            switch (state) {
+                case "Processing voters" -> pollClerkLabel.setBackground(Color.GREEN);
+                case "Election ended" -> pollClerkLabel.setBackground(Color.RED);
+                default -> pollClerkLabel.setBackground(Color.WHITE);
+            }
+        }
+
+        state = pollsterState;
+        if (state != null && !state.equals(shownPollsterState)) {
+            shownPollsterState = state;
+            pollsterLabel.setText("Pollster: " + state);
+            switch (state) {
+                case "Interviewing voters" -> pollsterLabel.setBackground(Color.BLUE);
+                case "Idle" -> pollsterLabel.setBackground(Color.GRAY);
+                default -> pollsterLabel.setBackground(Color.WHITE);
+            }
+        }
+
+        state = pollingStationState;
+        if (state != null && !state.equals(shownPollingStationState)) {
+            shownPollingStationState = state;
+            pollingStationLabel.setText("Polling Station: " + state);
+            switch (state) {
+                case "Open" -> pollingStationLabel.setBackground(Color.GREEN);
+                case "Closed" -> pollingStationLabel.setBackground(Color.RED);
+                default -> pollingStationLabel.setBackground(Color.WHITE);
+            }
+        }
+
+        int count = votersInside;
+        if (count >= 0 && count != shownVotersInside) {
+            shownVotersInside = count;
+            votersInsideLabel.setText("Voters inside: " + count);
+        }
+        count = votersProcessed;
+        if (count >= 0 && count != shownVotersProcessed) {
+            shownVotersProcessed = count;
+            votersProcessedLabel.setText("Voters processed: " + count);
+        }
+        count = votersRemaining;
+        if (count >= 0 && count != shownVotersRemaining) {
+            shownVotersRemaining = count;
             votersRemainingLabel.setText("Voters remaining: " + count);
-        });
+        }
+
+        TallySnapshot latestTally = tally;
+        if (latestTally != null && latestTally != shownTally) {
+            shownTally = latestTally;
+            tallyLabel.setText("Live tally: " + latestTally);
+        }
+
+        int version = voterStates.getVersion();
+        if (version != shownVersion) {
+            shownVersion = version;
+            voterPanel.refresh();
+        }
     }
 
     /**
@@ -239,15 +339,48 @@ public class ElectionSimulationGUI extends JFrame {
         return logArea;
     }
 
+    /**
+     * Get the bounded view the Logger feeds the log area through.
+     * @return The LogView of the log area.
+     */
+    public LogView getLogView() {
+        return logView;
+    }
+
     /**
      * Stop the simulation.
      * This method is called when the "Stop Simulation" button is clicked.
      */
     private void stopSimulation() {
-        PollingStation pollingStation = Main.getPollingStation();
-        if (pollingStation != null) {
+        stopButton.setEnabled(false);
+        stopButton.setText("Stopping...");
+        // Saving a checkpoint waits for every station to reach a safepoint and syncs the file,
+        // which may take seconds, so it runs off the event dispatch thread
+        new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() {
+                return Main.saveCheckpoint(); // with --checkpoint, the election can be resumed from here
+            }
+
+            @Override
+            protected void done() {
+                stopActors();
+                stopButton.setText("Stopped");
+            }
+        }.execute();
+    }
+
+    /**
+     * Close the stations and exit polls and interrupt every actor
+     */
+    private void stopActors() {
+        for (PollingStation pollingStation : Main.getPollingStations()) {
             pollingStation.close();
         }
+
+        for (ExitPoll exitPoll : Main.getExitPolls()) {
+            exitPoll.close(); // wake the pollsters right away
+        }
     
         MyArrayList<Thread> threads = Main.getThreads();
         for (int i = 0; i < threads.size(); i++) {
@@ -261,4 +394,137 @@ public class ElectionSimulationGUI extends JFrame {
         logger.log("Simulation stopped by user");
     
     }
-}
\ No newline at end of file
+
+    /**
+     * VoterCanvas.
+     * Paints the voters straight from the VoterStateBoard, one cell per voter id. Small elections
+     * get two columns of icons with the state written out, like a list; larger ones a grid of
+     * colored cells, with the state in a tooltip. Only the cells inside the visible area are painted.
+     */
+    private class VoterCanvas extends JComponent implements Scrollable {
+        private static final long serialVersionUID = 1L;
+        private static final int LABEL_HEIGHT = 48;
+        private int[] rowStates = new int[0];
+        private int shownCells = -1;
+        private int shownWidth = -1;
+        private boolean labeled;
+
+        VoterCanvas() {
+            setOpaque(true);
+            setBackground(Color.WHITE);
+            setToolTipText(""); // enables getToolTipText(MouseEvent)
+        }
+
+        /**
+         * Resize for the voters seen so far and repaint what's visible
+         */
+        void refresh() {
+            int cells = voterStates.getMaxId() + 1;
+            boolean nowLabeled = cells <= LABELED_VOTERS;
+            if (cells != shownCells || nowLabeled != labeled || getWidth() != shownWidth) {
+                shownCells = cells;
+                shownWidth = getWidth();
+                labeled = nowLabeled;
+                revalidate(); // the scroll pane asks for the new preferred size
+            }
+            repaint();
+        }
+
+        private int columns() {
+            return labeled ? 2 : Math.max(1, getWidth() / CELL_SIZE);
+        }
+
+        private int cellWidth() {
+            return labeled ? Math.max(1, getWidth() / 2) : CELL_SIZE;
+        }
+
+        private int cellHeight() {
+            return labeled ? LABEL_HEIGHT : CELL_SIZE;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int cells = Math.max(0, shownCells);
+            int rows = (cells + columns() - 1) / columns();
+            return new Dimension(getWidth(), rows * cellHeight());
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return cellHeight();
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return Math.max(cellHeight(), visibleRect.height - cellHeight());
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true; // the number of columns follows the width
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            int cells = shownCells;
+            int columns = columns();
+            int width = cellWidth();
+            int height = cellHeight();
+            int firstRow = Math.max(0, clip.y / height);
+            int lastRow = Math.min((cells - 1) / columns, (clip.y + clip.height) / height);
+            if (rowStates.length < columns) {
+                rowStates = new int[columns];
+            }
+
+            for (int row = firstRow; row <= lastRow; row++) {
+                int first = row * columns;
+                int length = Math.min(columns, cells - first);
+                voterStates.snapshot(first, rowStates, length);
+                for (int c = 0; c < length; c++) {
+                    int x = c * width;
+                    int y = row * height;
+                    int state = rowStates[c];
+                    if (state == VoterStateBoard.UNSEEN) {
+                        continue;
+                    }
+                    g.setColor(STATE_COLORS[state]);
+                    if (labeled) {
+                        g.fillRect(x, y, width - 1, height - 1);
+                        VOTER_ICON.paintIcon(this, g, x + 2, y + (height - VOTER_ICON.getIconHeight()) / 2);
+                        g.setColor(Color.BLACK);
+                        g.drawString("Voter " + (first + c) + ": " + VoterStateBoard.nameOf(state),
+                                x + VOTER_ICON.getIconWidth() + 6, y + height / 2 + 5);
+                    } else {
+                        g.fillRect(x, y, width - 1, height - 1);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            int columns = columns();
+            int column = e.getX() / cellWidth();
+            if (column >= columns) {
+                return null;
+            }
+            int id = (e.getY() / cellHeight()) * columns + column;
+            int state = voterStates.get(id);
+            return id < shownCells && state != VoterStateBoard.UNSEEN ? "Voter " + id + ": " + VoterStateBoard.nameOf(state) : null;
+        }
+    }
+}
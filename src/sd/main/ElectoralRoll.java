@@ -0,0 +1,407 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ElectoralRoll.java
+ * This class is the register of the voter ids allowed to vote. The roll file holds the ids sorted,
+ * and next to them the index built when the file was written, so opening it only memory-maps it:
+ * a roll of tens of millions of voters costs no heap and no loading time.
+ *  - a Bloom filter (about 10 bits per voter, 1-2% false positives) answers most unregistered ids
+ *    without touching the ids. It is blocked: the 8 bits of an id are in two words of one 64-byte
+ *    block, so a lookup costs one cache miss and two reads;
+ *  - a directory splits the id range into buckets of about 8 voters, so finding an id is a bucket
+ *    lookup and a search of a few entries, O(1) for ids spread over their range;
+ *  - a bitmap allocated off the heap, one bit per voter in roll order, records who voted. It is set
+ *    with a compare-and-set, so stations sharing the roll (and their clerks) never vote an id twice.
+ *
+ * File format (big-endian): the int "ROLL", the number of ids, the number of directory buckets, the
+ * number of Bloom blocks; the ids in ascending order; the directory (first id index of every bucket,
+ * then the number of ids); padding to 64 bytes; the Bloom blocks.
+ * main writes such a file: java ElectoralRoll roll.bin COUNT [MAX_ID]
+ */
+public class ElectoralRoll {
+    private static final int MAGIC = 0x524F4C4C; // "ROLL"
+    private static final int HEADER_SIZE = 16;
+    private static final int SEGMENT_BITS = 28; // 2^28 ids (1 GB) per mapping
+    private static final int BLOOM_BITS_PER_ID = 10;
+    private static final int BLOOM_BLOCK_BYTES = 64; // a cache line
+    private static final int IDS_PER_BUCKET = 8;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Path path;
+    private final int size;
+    private final MappedByteBuffer[] segments; // the ids
+    private final MappedByteBuffer directory;
+    private final int buckets;
+    private final MappedByteBuffer bloom;
+    private final long bloomBlockMask;   // number of blocks - 1, a power of two
+    private final int minId;
+    private final int maxId;
+    private final ByteBuffer voted;      // off-heap bitmap, one bit per roll index
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder bloomRejected = new LongAdder();
+    private final LongAdder bloomFalsePositives = new LongAdder();
+
+    private ElectoralRoll(Path path, int size, MappedByteBuffer[] segments, MappedByteBuffer directory, int buckets,
+                          MappedByteBuffer bloom, int bloomBlocks) {
+        this.path = path;
+        this.size = size;
+        this.segments = segments;
+        this.directory = directory;
+        this.buckets = buckets;
+        this.bloom = bloom;
+        this.bloomBlockMask = bloomBlocks - 1;
+        this.minId = size == 0 ? 0 : idAt(0);
+        this.maxId = size == 0 ? -1 : idAt(size - 1);
+        this.voted = ByteBuffer.allocateDirect((int) ((size + 63L) / 64 * 8) + 8).alignedSlice(8).order(ByteOrder.nativeOrder()); // aligned for compareAndSet
+    }
+
+    /**
+     * Map a roll file
+     * @param path Roll file
+     * @return ElectoralRoll
+     * @throws IOException if the file can't be read or isn't a roll
+     */
+    public static ElectoralRoll open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("not an electoral roll");
+            }
+            int size = header.getInt();
+            int buckets = header.getInt();
+            int bloomBlocks = header.getInt();
+            if (size < 0 || buckets < 1 || Integer.bitCount(bloomBlocks) != 1
+                    || channel.size() < bloomStart(size, buckets) + (long) bloomBlocks * BLOOM_BLOCK_BYTES) {
+                throw new IOException("electoral roll is truncated");
+            }
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS)];
+            for (int s = 0; s < segments.length; s++) {
+                long first = (long) s << SEGMENT_BITS;
+                long count = Math.min(1L << SEGMENT_BITS, size - first);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + 4 * first, 4 * count); // stays valid after close
+            }
+            MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + 4L * size, 4L * (buckets + 1));
+            MappedByteBuffer bloom = channel.map(FileChannel.MapMode.READ_ONLY, bloomStart(size, buckets), (long) bloomBlocks * BLOOM_BLOCK_BYTES);
+            return new ElectoralRoll(path, size, segments, directory, buckets, bloom, bloomBlocks);
+        }
+    }
+
+    /**
+     * Write a roll file
+     * @param path Roll file
+     * @param sortedIds Ids in ascending order, without repeats
+     * @throws IOException
+     */
+    public static void write(Path path, int[] sortedIds) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(sortedIds.length);
+            out.writeLong(0); // index sizes, filled in by writeIndex
+            for (int id : sortedIds) {
+                out.writeInt(id);
+            }
+        }
+        writeIndex(path);
+    }
+
+    /**
+     * Build the directory and Bloom filter of a file holding the header and the ids, and append them
+     * (on the heap of the writing process, in one pass over the ids, which also checks they are sorted)
+     */
+    private static void writeIndex(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(4);
+            int size = file.readInt();
+            int buckets = Math.max(1, Integer.highestOneBit(Math.max(1, size / IDS_PER_BUCKET)));
+            int bloomBlocks = (int) Math.min(1 << 25, Long.highestOneBit(Math.max(1, (long) size * BLOOM_BITS_PER_ID / (8 * BLOOM_BLOCK_BYTES))) << 1);
+            int[] directory = new int[buckets + 1];
+            long[] bloom = new long[bloomBlocks * (BLOOM_BLOCK_BYTES / 8)];
+
+            MappedByteBuffer ids = file.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 4L * size);
+            int minId = size == 0 ? 0 : ids.getInt(0);
+            long range = size == 0 ? 1 : (long) ids.getInt(4 * (size - 1)) - minId + 1;
+            int nextBucket = 0;
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int id = ids.getInt(4 * i);
+                if (i > 0 && id <= previous) {
+                    throw new IOException("ids are not sorted at position " + i);
+                }
+                previous = id;
+                long hash = mix(id);
+                int block = (int) ((hash >>> 32) & (bloomBlocks - 1)) * (BLOOM_BLOCK_BYTES / 8);
+                bloom[block + (int) (hash & 7)] |= bloomBits(hash, 0);
+                bloom[block + (int) ((hash >>> 3) & 7)] |= bloomBits(hash, 1);
+                int bucket = (int) (((long) id - minId) * buckets / range);
+                while (nextBucket <= bucket) {
+                    directory[nextBucket++] = i;
+                }
+            }
+            while (nextBucket <= buckets) {
+                directory[nextBucket++] = size;
+            }
+
+            file.seek(8);
+            file.writeInt(buckets);
+            file.writeInt(bloomBlocks);
+            file.seek(HEADER_SIZE + 4L * size);
+            file.setLength(HEADER_SIZE + 4L * size); // written again if it was indexed before
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(file.getChannel()), 1 << 16));
+            for (int first : directory) {
+                out.writeInt(first);
+            }
+            for (long p = HEADER_SIZE + 4L * size + 4L * directory.length; p < bloomStart(size, buckets); p++) {
+                out.writeByte(0);
+            }
+            for (long bits : bloom) {
+                out.writeLong(bits);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Find the position of a voter id in the roll
+     * @param voterId
+     * @return Index in the roll, -1 if the id isn't registered
+     */
+    public int indexOf(int voterId) {
+        lookups.increment();
+        if (voterId < minId || voterId > maxId) {
+            bloomRejected.increment();
+            return -1;
+        }
+        long hash = mix(voterId);
+        int block = (int) ((hash >>> 32) & bloomBlockMask) * BLOOM_BLOCK_BYTES;
+        long first = bloomBits(hash, 0);
+        long second = bloomBits(hash, 1);
+        if ((bloom.getLong(block + 8 * (int) (hash & 7)) & first) != first
+                || (bloom.getLong(block + 8 * (int) ((hash >>> 3) & 7)) & second) != second) {
+            bloomRejected.increment();
+            return -1;
+        }
+        int bucket = (int) (((long) voterId - minId) * buckets / ((long) maxId - minId + 1));
+        int low = directory.getInt(4 * bucket);
+        int high = directory.getInt(4 * (bucket + 1)) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = idAt(middle);
+            if (id < voterId) {
+                low = middle + 1;
+            } else if (id > voterId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        bloomFalsePositives.increment();
+        return -1;
+    }
+
+    /**
+     * Check if a voter id is registered
+     * @param voterId
+     * @return boolean
+     */
+    public boolean isRegistered(int voterId) {
+        return indexOf(voterId) >= 0;
+    }
+
+    /**
+     * Check if a registered voter already voted
+     * @param voterId
+     * @return true if registered and voted, false otherwise
+     */
+    public boolean hasVoted(int voterId) {
+        int index = indexOf(voterId);
+        return index >= 0 && hasVotedAt(index);
+    }
+
+    /**
+     * Check if the voter at a position of the roll already voted
+     * @param index Index from indexOf
+     * @return boolean
+     */
+    public boolean hasVotedAt(int index) {
+        long word = (long) LONGS.getVolatile(voted, (index >>> 6) << 3);
+        return (word & 1L << index) != 0;
+    }
+
+    /**
+     * Record that a voter votes, unless it isn't registered or already voted (atomic, lock-free)
+     * @param voterId
+     * @return true if the voter was registered and hadn't voted
+     */
+    public boolean markVoted(int voterId) {
+        int index = indexOf(voterId);
+        return index >= 0 && markVotedAt(index);
+    }
+
+    /**
+     * Record that the voter at a position of the roll votes, unless it already voted (atomic, lock-free)
+     * @param index Index from indexOf
+     * @return true if the voter hadn't voted
+     */
+    public boolean markVotedAt(int index) {
+        int offset = (index >>> 6) << 3;
+        long bit = 1L << index;
+        while (true) {
+            long word = (long) LONGS.getVolatile(voted, offset);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (LONGS.compareAndSet(voted, offset, word, word | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get the ids of the registered voters who voted
+     * @return ids, in ascending order
+     */
+    public int[] getVotedIds() {
+        int count = 0;
+        for (int offset = 0; offset < voted.capacity(); offset += 8) {
+            count += Long.bitCount((long) LONGS.getVolatile(voted, offset));
+        }
+        int[] ids = new int[count];
+        int i = 0;
+        for (int offset = 0; offset < voted.capacity() && i < count; offset += 8) {
+            long word = (long) LONGS.getVolatile(voted, offset);
+            while (word != 0 && i < count) {
+                ids[i++] = idAt(offset * 8 + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Get the number of registered voters
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the memory allocated outside the heap for the voted bitmap (the mapped file not included)
+     * @return bytes
+     */
+    public long offHeapBytes() {
+        return voted.capacity();
+    }
+
+    /**
+     * Log the size of the roll and how lookups were answered
+     */
+    public void logStatistics() {
+        Logger.getInstance("log.txt").log(String.format(
+                "Electoral roll %s: %d voters, %d voted, %d lookups, %d unregistered ids rejected by the Bloom filter, %d false positives",
+                path, size, getVotedIds().length, lookups.sum(), bloomRejected.sum(), bloomFalsePositives.sum()));
+    }
+
+    private int idAt(int index) {
+        return segments[index >>> SEGMENT_BITS].getInt((index & ((1 << SEGMENT_BITS) - 1)) << 2);
+    }
+
+    private static long bloomStart(int size, int buckets) {
+        long end = HEADER_SIZE + 4L * size + 4L * (buckets + 1);
+        return (end + BLOOM_BLOCK_BYTES - 1) / BLOOM_BLOCK_BYTES * BLOOM_BLOCK_BYTES;
+    }
+
+    /**
+     * Four bits of one of the two words an id sets in its Bloom block
+     */
+    private static long bloomBits(long hash, int word) {
+        long bits = hash * 0x9E3779B97F4A7C15L >>> (6 + 24 * word); // 24 more bits of the hash, 6 per bit
+        return 1L << bits | 1L << (bits >>> 6) | 1L << (bits >>> 12) | 1L << (bits >>> 18);
+    }
+
+    private static long mix(int value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Roll generator and lookup cost report: java ElectoralRoll roll.bin COUNT [MAX_ID]
+    // Ids are COUNT distinct values drawn evenly from 1..MAX_ID (2 * COUNT by default)
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ElectoralRoll roll.bin COUNT [MAX_ID]");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        int count = Integer.parseInt(args[1]);
+        long maxId = args.length > 2 ? Long.parseLong(args[2]) : 2L * count;
+        if (maxId > Integer.MAX_VALUE || maxId < count) {
+            System.err.println("Error: MAX_ID must be between COUNT and " + Integer.MAX_VALUE + ".");
+            return;
+        }
+
+        long start = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(RunSeed.get());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            out.writeLong(0); // index sizes, filled in by writeIndex
+            long needed = count;
+            for (long id = 1; id <= maxId && needed > 0; id++) { // selection sampling, ids come out sorted
+                if (random.nextLong(maxId - id + 1) < needed) {
+                    out.writeInt((int) id);
+                    needed--;
+                }
+            }
+        }
+        writeIndex(path);
+        System.out.printf("Wrote %d ids and their index in %.1f s to %s (%.1f MB)%n",
+                count, (System.nanoTime() - start) / 1e9, path, Files.size(path) / 1048576.0);
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        start = System.nanoTime();
+        ElectoralRoll roll = open(path);
+        long openNanos = System.nanoTime() - start;
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("Opened in %.1f ms, %.1f MB off-heap, heap grew %.1f MB%n",
+                openNanos / 1e6, roll.offHeapBytes() / 1048576.0, Math.max(0, heapAfter - heapBefore) / 1048576.0);
+
+        for (int round = 0; round < 2; round++) { // the first round also faults the mapped pages in
+            int probes = 10_000_000;
+            int voted = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < probes; i++) {
+                if (roll.markVoted(1 + random.nextInt((int) maxId))) {
+                    voted++;
+                }
+            }
+            System.out.printf("%d markVoted on random ids: %.0f ns each, %d voted%n",
+                    probes, (System.nanoTime() - start) / (double) probes, voted);
+        }
+        System.out.printf("Bloom filter rejected %d of %d lookups, %d false positives%n",
+                roll.bloomRejected.sum(), roll.lookups.sum(), roll.bloomFalsePositives.sum());
+    }
+}
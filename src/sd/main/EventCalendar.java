@@ -0,0 +1,169 @@
+import java.util.Arrays;
+
+/**
+ * EventCalendar.java
+ * This class is the future event list of the discrete-event simulation: a binary min-heap of
+ * events ordered by virtual time, kept in parallel primitive arrays so scheduling an event
+ * never allocates (only growing the heap does). Events at the same time come out in the
+ * order they were scheduled, which keeps runs with the same seed reproducible.
+ */
+public class EventCalendar {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private long[] times;
+    private long[] sequence; // tie breaker, schedule order
+    private int[] types;
+    private int[] subjects;
+    private int size;
+    private long nextSequence;
+
+    // the event returned by the last poll()
+    private long time;
+    private int type;
+    private int subject;
+
+    /**
+     * Constructor for EventCalendar
+     */
+    public EventCalendar() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for EventCalendar
+     * @param initialCapacity Number of pending events that fit without growing
+     */
+    public EventCalendar(int initialCapacity) {
+        int capacity = Math.max(2, initialCapacity);
+        times = new long[capacity];
+        sequence = new long[capacity];
+        types = new int[capacity];
+        subjects = new int[capacity];
+    }
+
+    /**
+     * Schedule an event
+     * @param time Virtual time of the event
+     * @param type Kind of event, defined by the model
+     * @param subject Entity the event is about (clerk, booth, voter...), defined by the model
+     */
+    public void schedule(long time, int type, int subject) {
+        if (size == times.length) {
+            grow();
+        }
+        int i = size++;
+        long seq = nextSequence++;
+        while (i > 0) { // sift up
+            int parent = (i - 1) >>> 1;
+            if (!before(time, seq, times[parent], sequence[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, time, seq, type, subject);
+    }
+
+    /**
+     * Remove the earliest event, which can then be read with getTime, getType and getSubject
+     * @return false if there are no events left
+     */
+    public boolean poll() {
+        if (size == 0) {
+            return false;
+        }
+        time = times[0];
+        type = types[0];
+        subject = subjects[0];
+
+        size--;
+        if (size > 0) { // sift the last event down from the root
+            long lastTime = times[size];
+            long lastSeq = sequence[size];
+            int lastType = types[size];
+            int lastSubject = subjects[size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && before(times[right], sequence[right], times[child], sequence[child])) {
+                    child = right;
+                }
+                if (!before(times[child], sequence[child], lastTime, lastSeq)) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            set(i, lastTime, lastSeq, lastType, lastSubject);
+        }
+        return true;
+    }
+
+    /**
+     * Check if there are no pending events
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the number of pending events
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the time of the last polled event
+     * @return long
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the type of the last polled event
+     * @return int
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Get the subject of the last polled event
+     * @return int
+     */
+    public int getSubject() {
+        return subject;
+    }
+
+    private static boolean before(long timeA, long seqA, long timeB, long seqB) {
+        return timeA < timeB || (timeA == timeB && seqA < seqB);
+    }
+
+    private void move(int from, int to) {
+        times[to] = times[from];
+        sequence[to] = sequence[from];
+        types[to] = types[from];
+        subjects[to] = subjects[from];
+    }
+
+    private void set(int i, long time, long seq, int type, int subject) {
+        times[i] = time;
+        sequence[i] = seq;
+        types[i] = type;
+        subjects[i] = subject;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        sequence = Arrays.copyOf(sequence, capacity);
+        types = Arrays.copyOf(types, capacity);
+        subjects = Arrays.copyOf(subjects, capacity);
+    }
+}
@@ -1,12 +1,19 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * ExitPoll.java
  * This class represents the exit poll in the election simulation.
  * It manages a queue of voters who have finished voting and are waiting to be interviewed by the pollster.
  * The exit poll ensures that voters are added and removed in a thread-safe manner.
+ * The pollster blocks on it while it is empty, and can take every waiting voter in one call.
  */
 public class ExitPoll {
     private final GenericFIFO<Voter> exitPollQueue;
     private boolean isPollingStationOpen;
+    private final ReentrantLock lock;
+    private final Condition votersWaiting; // voters arrived or the exit poll closed
 
     /**
      * Constructor for ExitPoll.
@@ -14,16 +21,26 @@ public class ExitPoll {
     public ExitPoll(){
         this.exitPollQueue = new GenericFIFO<>();
         this.isPollingStationOpen = true;
+        this.lock = new ReentrantLock();
+        this.votersWaiting = lock.newCondition();
     }
 
     /**
      * Add a voter to the exit poll queue.
      * @param voter The voter to be added to the queue.
+     * @return True if the voter was added, false if the exit poll is closed.
      */
-    public synchronized void addVoter(Voter voter){
-        if(isPollingStationOpen){
-            exitPollQueue.enQueue(voter);
-            notifyAll();
+    public boolean addVoter(Voter voter){
+        lock.lock();
+        try {
+            if(isPollingStationOpen){
+                exitPollQueue.enQueue(voter);
+                votersWaiting.signal(); // only the pollster waits on the exit poll
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -31,24 +48,100 @@ public class ExitPoll {
      * Remove a voter from the exit poll queue.
      * @return The voter removed from the queue, or null if the queue is empty.
      */
-    public synchronized Voter removeVoter(){
-        return exitPollQueue.isEmpty() ? null : exitPollQueue.deQueue();
+    public Voter removeVoter(){
+        lock.lock();
+        try {
+            return exitPollQueue.isEmpty() ? null : exitPollQueue.deQueue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a voter from the exit poll queue, waiting for one if the queue is empty.
+     * @param timeoutMillis Maximum time to wait.
+     * @return The voter removed from the queue, or null on timeout or if the exit poll is closed and empty.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Voter take(long timeoutMillis) throws InterruptedException{
+        lock.lock();
+        try {
+            awaitVoters(timeoutMillis);
+            return exitPollQueue.deQueue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove every waiting voter (up to a maximum) from the exit poll queue in one go,
+     * waiting for at least one if the queue is empty.
+     * @param batch The list that receives the voters, in arrival order.
+     * @param maxVoters Maximum number of voters to remove.
+     * @param timeoutMillis Maximum time to wait.
+     * @return Number of voters removed, 0 on timeout or if the exit poll is closed and empty.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public int drainTo(MyArrayList<Voter> batch, int maxVoters, long timeoutMillis) throws InterruptedException{
+        lock.lock();
+        try {
+            awaitVoters(timeoutMillis);
+            return exitPollQueue.drainTo(batch, maxVoters);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the queue has voters, the exit poll closes or the timeout elapses (lock held).
+     */
+    private void awaitVoters(long timeoutMillis) throws InterruptedException{
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while(exitPollQueue.isEmpty() && isPollingStationOpen){
+            if(remaining <= 0){
+                return;
+            }
+            remaining = votersWaiting.awaitNanos(remaining);
+        }
     }
 
     /**
      * Close the exit poll.
      * This method is called when the polling station is closed.
      */
-    public synchronized void close(){
-        isPollingStationOpen = false;
-        notifyAll();    // Notify the Pollster that polling is closed
+    public void close(){
+        lock.lock();
+        try {
+            isPollingStationOpen = false;
+            votersWaiting.signalAll();    // Notify the Pollster that polling is closed
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check if the exit poll was closed.
+     * @return True if closed, false otherwise.
+     */
+    public boolean isClosed(){
+        lock.lock();
+        try {
+            return !isPollingStationOpen;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Check if the exit poll queue is empty.
      * @return True if the queue is empty, false otherwise.
      */
-    public synchronized boolean isEmpty(){
-        return exitPollQueue.isEmpty();
+    public boolean isEmpty(){
+        lock.lock();
+        try {
+            return exitPollQueue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,39 @@
 /**
  * GenericFIFO
  * This class represents a generic Object FIFO queue.
+ * Items are kept in a circular buffer, so enQueue and deQueue are O(1)
+ * (enQueue amortized, the buffer doubles when full).
  */
 public class GenericFIFO<T> {
-    // Data structure to store the queue
-    private MyArrayList<T> data;         
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Circular buffer to store the queue, its length is always a power of two
+    private T[] data;
+    private int head;   // index of the front item
+    private int size;
+    private final int minCapacity;
+    private final boolean shrink; // halve the buffer when it is only a quarter full
 
     /**
      * Constructor for GenericFIFO
      */
     public GenericFIFO() {
-        data = new MyArrayList<T>();
+        this(DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * Constructor for GenericFIFO
+     * @param initialCapacity Initial size of the buffer
+     * @param shrink true to release memory when the queue empties out
+     */
+    @SuppressWarnings("unchecked")
+    public GenericFIFO(int initialCapacity, boolean shrink) {
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1;
+        this.data = (T[]) new Object[capacity];
+        this.head = 0;
+        this.size = 0;
+        this.minCapacity = capacity;
+        this.shrink = shrink;
     }
 
     /**
@@ -18,28 +41,100 @@ public class GenericFIFO<T> {
      * @param x
      */
     public void enQueue(T x) {
-        data.add(x);
-        //System.out.println(this + " data size: " + data.size());
-    }    
-  
+        if (size == data.length) {
+            resize(data.length * 2);
+        }
+        data[(head + size) & (data.length - 1)] = x;
+        size++;
+    }
+
     /**
      * Remove an item from the queue
-     * @return boolean
+     * @return T, or null if the queue is empty
      */
     public T deQueue() {
         if (isEmpty()) {
             return null;
         }
-        T object = data.removeFirst();
+        T object = data[head];
+        data[head] = null;
+        head = (head + 1) & (data.length - 1);
+        size--;
+        if (shrink && data.length > minCapacity && size <= data.length / 4) {
+            resize(data.length / 2);
+        }
         return object;
     }
-  
+
+    /**
+     * Remove the item at the back of the queue (the most recently added one)
+     * @return T, or null if the queue is empty
+     */
+    public T deQueueLast() {
+        if (isEmpty()) {
+            return null;
+        }
+        int tail = (head + size - 1) & (data.length - 1);
+        T object = data[tail];
+        data[tail] = null;
+        size--;
+        if (shrink && data.length > minCapacity && size <= data.length / 4) {
+            resize(data.length / 2);
+        }
+        return object;
+    }
+
+    /**
+     * Remove up to maxItems items from the queue into a batch, in FIFO order
+     * @param batch List that receives the items
+     * @param maxItems Maximum number of items to remove
+     * @return Number of items removed
+     */
+    public int drainTo(MyArrayList<T> batch, int maxItems) {
+        int count = Math.min(size, maxItems);
+        int mask = data.length - 1;
+        for (int i = 0; i < count; i++) {
+            batch.add(data[head]);
+            data[head] = null;
+            head = (head + 1) & mask;
+        }
+        size -= count;
+        if (shrink && data.length > minCapacity && size <= data.length / 4) {
+            resize(Math.max(minCapacity, Integer.highestOneBit(Math.max(1, size)) << 1));
+        }
+        return count;
+    }
+
+    /**
+     * Remove every item from the queue into a batch, in FIFO order
+     * @param batch List that receives the items
+     * @return Number of items removed
+     */
+    public int drainTo(MyArrayList<T> batch) {
+        return drainTo(batch, size);
+    }
+
     /**
      * Get the front item from the queue
      * @return T
      */
     public T front() {
-        return data.get(0);
+        if (isEmpty()) {
+            throw new IndexOutOfBoundsException("Queue is empty");
+        }
+        return data[head];
+    }
+
+    /**
+     * Get an item without removing it
+     * @param index Position from the front (0 is the front item)
+     * @return T
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Invalid index");
+        }
+        return data[(head + index) & (data.length - 1)];
     }
 
     /**
@@ -47,12 +142,7 @@ public class GenericFIFO<T> {
      * @return boolean
      */
     public boolean isEmpty() {
-        if(data.size() == 0){
-            return true;
-        }
-        else{
-            return false;
-        }
+        return size == 0;
     }
 
     /**
@@ -60,6 +150,21 @@ public class GenericFIFO<T> {
      * @return int
      */
     public int size() {
-        return data.size();
+        return size;
+    }
+
+    /**
+     * Move the items to a new buffer, unwrapping them so the front is at index 0
+     * @param capacity New buffer size (power of two, at least size)
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        T[] newData = (T[]) new Object[capacity];
+        int mask = data.length - 1;
+        for (int i = 0; i < size; i++) {
+            newData[i] = data[(head + i) & mask];
+        }
+        data = newData;
+        head = 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+import java.util.Arrays;
+
+/**
+ * IntHashSet
+ * A set of primitive ints using open addressing with linear probing.
+ * Lookups and inserts never allocate (only growing the table does), and stay O(1)
+ * regardless of how many ids are stored, unlike a linear scan over boxed Integers.
+ */
+public class IntHashSet {
+    private static final int EMPTY = 0; // 0 marks a free slot, the value 0 itself is tracked apart
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int[] table;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+    private boolean containsEmptyValue;
+
+    /**
+     * Constructor for IntHashSet
+     */
+    public IntHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for IntHashSet
+     * @param expectedSize Number of values that fit without growing the table
+     */
+    public IntHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Add a value to the set
+     * @param value
+     * @return true if the value was added, false if it was already present
+     */
+    public boolean add(int value) {
+        if (value == EMPTY) {
+            if (containsEmptyValue) {
+                return false;
+            }
+            containsEmptyValue = true;
+            size++;
+            return true;
+        }
+        int index = hash(value) & mask;
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Check if the set contains a value
+     * @param value
+     * @return boolean
+     */
+    public boolean contains(int value) {
+        if (value == EMPTY) {
+            return containsEmptyValue;
+        }
+        int index = hash(value) & mask;
+        int current;
+        while ((current = table[index]) != EMPTY) {
+            if (current == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of values in the set
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Clear the set, keeping the current table
+     */
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        containsEmptyValue = false;
+        size = 0;
+    }
+
+    /**
+     * Get the values stored in the set, in no particular order
+     * @return int[] of length size()
+     */
+    public int[] toArray() {
+        int[] values = new int[size];
+        int i = 0;
+        if (containsEmptyValue) {
+            values[i++] = EMPTY;
+        }
+        for (int value : table) {
+            if (value != EMPTY) {
+                values[i++] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Approximate heap used by the set: the int table plus the array header
+     * @return bytes
+     */
+    public long footprintBytes() {
+        return 16L + 4L * table.length;
+    }
+
+    /**
+     * Spread the bits so sequential ids don't cluster (Fibonacci hashing)
+     */
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity / 2; // load factor 0.5 keeps probe chains short
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTable = table;
+        allocate(capacity);
+        for (int value : oldTable) {
+            if (value != EMPTY) {
+                int index = hash(value) & mask;
+                while (table[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+
+    /**
+     * Estimated heap used by a MyArrayList<Integer> holding n distinct ids:
+     * the reference array (doubling from 10) plus one 16 byte Integer per id
+     * outside the Integer cache, assuming compressed references
+     */
+    private static long boxedListFootprintBytes(int n) {
+        long capacity = 10;
+        while (capacity < n) {
+            capacity *= 2;
+        }
+        long boxed = Math.max(0, n - 128);
+        return 16L + 4L * capacity + 16L * boxed;
+    }
+
+    // Memory footprint report: java IntHashSet [ids...]
+    public static void main(String[] args) {
+        int[] sizes = {1_000, 100_000, 1_000_000, 10_000_000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.printf("%12s %16s %16s %8s %14s %14s%n", "ids", "IntHashSet (B)", "boxed list (B)", "ratio", "set lookup ns", "list lookup ns");
+        for (int n : sizes) {
+            IntHashSet set = new IntHashSet();
+            for (int id = 1; id <= n; id++) {
+                set.add(id);
+            }
+            long setBytes = set.footprintBytes();
+            long listBytes = boxedListFootprintBytes(n);
+
+            long start = System.nanoTime();
+            int hits = 0;
+            for (int id = 1; id <= 1000; id++) {
+                if (set.contains(id * 7919 % (n + 1))) hits++;
+            }
+            double setLookup = (System.nanoTime() - start) / 1000.0;
+
+            String listLookup = "-";
+            if (n <= 1_000_000) { // the linear scan gets too slow to measure beyond this
+                MyArrayList<Integer> list = new MyArrayList<>();
+                for (int id = 1; id <= n; id++) {
+                    list.add(id);
+                }
+                start = System.nanoTime();
+                for (int id = 1; id <= 100; id++) {
+                    if (list.query(id * 7919 % (n + 1))) hits++;
+                }
+                listLookup = String.format("%.0f", (System.nanoTime() - start) / 100.0);
+            }
+            System.out.printf("%12d %16d %16d %8.1f %14.0f %14s%n", n, setBytes, listBytes, (double) listBytes / setBytes, setLookup, listLookup);
+            if (hits < 0) System.out.println(hits);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram.java
+ * This class records durations into log-linear buckets, the way HdrHistogram does: every power of two
+ * is split into SUB_BUCKETS linear buckets, so any value is kept with a relative error of at most
+ * 1/SUB_BUCKETS (about 3%) from a nanosecond up to hours, in a fixed array.
+ * Recording is one atomic increment, without locks or allocation; the counters are striped by thread
+ * so actors recording at the same time rarely touch the same counter.
+ * Reading takes a Snapshot, from which percentiles are computed; two snapshots give the interval between them.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS) + SUB_BUCKETS; // every long value
+    private static final int STRIPES = 8;
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration
+     * @param nanos Duration in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + bucketOf(value));
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // raised by another thread, retry
+        }
+    }
+
+    /**
+     * Copy the counters. Not atomic across buckets while durations are being recorded,
+     * which only shifts a recording in progress to the next snapshot.
+     * @return Snapshot
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += counts.get(stripe * BUCKETS + i);
+            }
+        }
+        return new Snapshot(buckets, max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value; // exact
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    /**
+     * Largest value that falls in a bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket - SUB_BUCKETS * shift;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Snapshot.
+     * Counters of a histogram at one moment.
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] buckets, long max) {
+            this.buckets = buckets;
+            long total = 0;
+            for (long c : buckets) {
+                total += c;
+            }
+            this.count = total;
+            this.max = max;
+        }
+
+        /**
+         * Get the durations recorded since an earlier snapshot of the same histogram
+         * @param earlier
+         * @return Snapshot, whose max is the highest bucket recorded in the interval
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] delta = new long[BUCKETS];
+            int highest = -1;
+            for (int i = 0; i < BUCKETS; i++) {
+                delta[i] = buckets[i] - earlier.buckets[i];
+                if (delta[i] > 0) {
+                    highest = i;
+                }
+            }
+            return new Snapshot(delta, highest < 0 ? 0 : Math.min(max, highestValueOf(highest)));
+        }
+
+        /**
+         * Get the number of recorded durations
+         * @return long
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the longest recorded duration
+         * @return Nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Get a percentile
+         * @param percentile Between 0 and 100, e.g. 99.9
+         * @return Nanoseconds (within the bucket precision), 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(max, highestValueOf(i));
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.Arrays;
+
+/**
+ * LiveTally.java
+ * This class gives the standings of a polling station while it is still voting. Booths keep
+ * counting into their own StripedVoteCounter as each vote is cast, and a reader takes a snapshot
+ * without any lock: it reads every counter twice, and if both reads agree the counts held together
+ * at the instant between them, since votes are only ever added. Voters never wait for readers.
+ * After the station closes no vote moves anymore, so the final count is one snapshot, O(parties x booths).
+ * A daemon publisher hands the latest snapshot of every station to the GUI and the log at a fixed interval,
+ * and to the station's aggregator, which streams it to the aggregation server as a vote delta.
+ */
+public class LiveTally {
+    private static final int MAX_COLLECTS = 16; // give up on an exact snapshot after this many tries
+
+    private final StripedVoteCounter[] counters;
+    private final int numParties = VotingParties.values().length;
+    private volatile TallySnapshot latest;
+
+    private static Thread publisher;
+
+    /**
+     * Constructor for LiveTally
+     * @param counters Counters of the booths of a station
+     */
+    public LiveTally(StripedVoteCounter[] counters) {
+        this.counters = counters;
+        this.latest = new TallySnapshot(new long[numParties], true);
+    }
+
+    /**
+     * Read the counts of every party at one instant, without blocking the booths
+     * @return TallySnapshot
+     */
+    public TallySnapshot snapshot() {
+        long[] previous = collect();
+        for (int attempt = 1; attempt < MAX_COLLECTS; attempt++) {
+            long[] current = collect();
+            if (Arrays.equals(previous, current)) {
+                return new TallySnapshot(current, true);
+            }
+            previous = current;
+        }
+        return new TallySnapshot(previous, false); // still consistent with its own total, just not one instant
+    }
+
+    /**
+     * Get the snapshot published last (by the publisher or publish())
+     * @return TallySnapshot
+     */
+    public TallySnapshot getLatest() {
+        return latest;
+    }
+
+    /**
+     * Take a snapshot and make it the latest one
+     * @return TallySnapshot
+     */
+    public TallySnapshot publish() {
+        TallySnapshot snapshot = snapshot();
+        latest = snapshot;
+        return snapshot;
+    }
+
+    private long[] collect() {
+        long[] counts = new long[numParties];
+        for (StripedVoteCounter counter : counters) {
+            counter.addTo(counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Publish the standings of the stations periodically, on a daemon thread: to the GUI (all
+     * stations added up) every period, and to the log every logPeriodMillis
+     * @param stations Stations of this process
+     * @param periodMillis Time between snapshots, in real milliseconds
+     * @param logPeriodMillis Time between log lines, 0 for none
+     */
+    public static synchronized void startPublisher(PollingStation[] stations, long periodMillis, long logPeriodMillis) {
+        if (publisher != null || periodMillis <= 0) {
+            return;
+        }
+        publisher = new Thread(() -> {
+            Logger logger = Logger.getInstance("log.txt");
+            long lastLog = System.nanoTime();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(periodMillis);
+                    TallySnapshot[] snapshots = new TallySnapshot[stations.length];
+                    for (int i = 0; i < stations.length; i++) {
+                        snapshots[i] = stations[i].getLiveTally().publish();
+                        ElectionAggregator aggregator = stations[i].getAggregator();
+                        if (aggregator != null) {
+                            aggregator.streamVotes(stations[i].getStationId(), snapshots[i]);
+                        }
+                    }
+                    Main.getGUI().updateTally(TallySnapshot.combine(snapshots));
+
+                    long now = System.nanoTime();
+                    if (logPeriodMillis > 0 && now - lastLog >= logPeriodMillis * 1_000_000) {
+                        lastLog = now;
+                        for (int i = 0; i < stations.length; i++) {
+                            logger.log("Live tally of station " + stations[i].getStationId() + ": " + snapshots[i]);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }, "live-tally-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    /**
+     * Stop the periodic publishing
+     */
+    public static synchronized void stopPublisher() {
+        if (publisher != null) {
+            publisher.interrupt();
+            publisher = null;
+        }
+    }
+}
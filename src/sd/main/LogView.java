@@ -0,0 +1,147 @@
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+
+/**
+ * LogView.java
+ * This class feeds the GUI log area. The Logger hands it every line, which only lands in a bounded
+ * ring of the most recent lines; a Swing timer moves the new lines to the text area a few times per
+ * second in a single append, and cuts the oldest lines once the area holds more than the limit.
+ * The log file is written by the Logger and stays complete, only the on-screen view is bounded.
+ * A filter (a voter id, or any text such as "Pollster" or "Clerk 2") limits the view to matching lines.
+ */
+public class LogView {
+    public static final int DEFAULT_MAX_LINES = 2000;
+    private static final int FLUSHES_PER_SECOND = 4;
+
+    private final JTextArea textArea;
+    private final int maxLines;
+
+    // Ring of the most recent lines, shared with the logging threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final String[] recent;
+    private long written; // lines added since the start
+
+    // Only used on the Swing thread
+    private long shown;   // lines already considered for the text area
+    private String filter = "";
+    private Pattern voterPattern;
+
+    /**
+     * Constructor for LogView
+     * @param textArea Text area showing the log
+     * @param maxLines Most lines kept in the text area, and in the ring
+     */
+    public LogView(JTextArea textArea, int maxLines) {
+        this.textArea = textArea;
+        this.maxLines = Math.max(1, maxLines);
+        this.recent = new String[this.maxLines];
+
+        Timer flushTimer = new Timer(1000 / FLUSHES_PER_SECOND, e -> flush());
+        flushTimer.setCoalesce(true);
+        flushTimer.start();
+    }
+
+    /**
+     * Add a line, callable from any thread. Never blocks on the Swing thread.
+     * @param line
+     */
+    public void add(String line) {
+        lock.lock();
+        try {
+            recent[(int) (written % recent.length)] = line;
+            written++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Show only the lines matching a filter, and redraw the view from the recent lines (on the Swing thread)
+     * @param newFilter A voter id, any other text to look for (ignoring case), or empty for every line
+     */
+    public void setFilter(String newFilter) {
+        String trimmed = newFilter == null ? "" : newFilter.trim();
+        if (trimmed.equals(filter)) {
+            return;
+        }
+        filter = trimmed;
+        voterPattern = trimmed.matches("\\d+") ? Pattern.compile("(Voter|ID:|into) " + trimmed + "(?!\\d)") : null;
+        textArea.setText("");
+        lock.lock();
+        try {
+            shown = Math.max(0, written - recent.length); // show again what's still in the ring
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    /**
+     * Get the most lines kept on screen
+     * @return int
+     */
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    /**
+     * Append the lines added since the last flush, then cut the oldest ones (on the Swing thread)
+     */
+    private void flush() {
+        String[] lines;
+        lock.lock();
+        try {
+            long from = Math.max(shown, written - recent.length); // older ones were overwritten before being shown
+            lines = new String[(int) (written - from)];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = recent[(int) ((from + i) % recent.length)];
+            }
+            shown = written;
+        } finally {
+            lock.unlock();
+        }
+
+        StringBuilder batch = new StringBuilder(); // filtered outside the lock, loggers never wait for it
+        for (String line : lines) {
+            if (matches(line)) {
+                batch.append(line).append('\n');
+            }
+        }
+        if (batch.length() == 0) {
+            return;
+        }
+
+        textArea.append(batch.toString());
+        int excess = textArea.getLineCount() - 1 - maxLines; // the text ends with a newline, so the last line is empty
+        if (excess > 0) {
+            try {
+                textArea.replaceRange("", 0, textArea.getLineEndOffset(excess - 1));
+            } catch (BadLocationException e) {
+                textArea.setText("");
+            }
+        }
+        textArea.setCaretPosition(textArea.getDocument().getLength()); // follow the newest lines
+    }
+
+    private boolean matches(String line) {
+        if (filter.isEmpty()) {
+            return true;
+        }
+        if (voterPattern != null) {
+            return voterPattern.matcher(line).find();
+        }
+        return containsIgnoreCase(line, filter);
+    }
+
+    private static boolean containsIgnoreCase(String line, String text) {
+        for (int i = 0; i + text.length() <= line.length(); i++) {
+            if (line.regionMatches(true, i, text, 0, text.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
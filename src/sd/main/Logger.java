@@ -2,12 +2,44 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import javax.swing.JTextArea;
-import javax.swing.SwingUtilities;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logger.java
+ * This class writes simulation events to the log file (and to the GUI log view, if any).
+ * By default every call writes and flushes synchronously. In asynchronous mode producers only
+ * put the message into a bounded ring buffer, and a dedicated writer thread drains it and
+ * writes in batches, flushing when a batch fills up or the flush interval elapses.
+ */
 public class Logger {
+    /**
+     * What to do with a message when the asynchronous buffer is full
+     */
+    public enum OverflowPolicy {
+        BLOCK,  // wait until the writer frees a slot
+        DROP,   // discard the message
+        SAMPLE  // keep one in every SAMPLE_RATE overflowing messages, discard the rest
+    }
+
+    private static final int SAMPLE_RATE = 10;
+
     private static Logger instance;
     private PrintWriter writer;
-    private static JTextArea logArea;
+    private static volatile LogView logView;
+
+    // Asynchronous mode
+    private volatile ConcurrentRingBuffer<String> buffer;
+    private volatile boolean closed;
+    private OverflowPolicy overflowPolicy;
+    private int batchSize;
+    private long flushIntervalNanos;
+    private Thread writerThread;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong overflowedEvents = new AtomicLong();
+    private final AtomicInteger producers = new AtomicInteger(); // log calls between the closed check and their offer
 
     private Logger(String fileName) {
         try {
@@ -24,20 +56,168 @@ public class Logger {
         return instance;
     }
 
-    public static synchronized void setLogArea(JTextArea logArea) {
-        Logger.logArea = logArea;
+    /**
+     * Also show the events in the GUI, through a bounded view (the file still gets every event)
+     * @param logView
+     */
+    public static synchronized void setLogView(LogView logView) {
+        Logger.logView = logView;
+    }
+
+    /**
+     * Switch the logger to asynchronous mode, starting the writer thread
+     * @param capacity Capacity of the ring buffer
+     * @param batchSize Maximum number of messages written between flushes
+     * @param flushIntervalMillis Maximum time a written message waits to be flushed
+     * @param overflowPolicy What to do when the buffer is full
+     */
+    public synchronized void startAsync(int capacity, int batchSize, long flushIntervalMillis, OverflowPolicy overflowPolicy) {
+        if (buffer != null || closed) {
+            return;
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.writerThread = new Thread(this::drainLoop, "logger-writer");
+        this.writerThread.setDaemon(true);
+        this.buffer = new ConcurrentRingBuffer<>(capacity);
+        this.writerThread.start();
+    }
+
+    public void log(String message) {
+        ConcurrentRingBuffer<String> ring = buffer;
+        if (ring == null) {
+            logSync(message);
+            return;
+        }
+        producers.incrementAndGet(); // before reading closed, so close() either waits for this message or it sees closed
+        try {
+            if (closed) {
+                droppedEvents.incrementAndGet();
+                return;
+            }
+            if (ring.offer(message)) {
+                return;
+            }
+            switch (overflowPolicy) {
+                case DROP -> droppedEvents.incrementAndGet();
+                case SAMPLE -> {
+                    if (overflowedEvents.getAndIncrement() % SAMPLE_RATE == 0) {
+                        offerBlocking(ring, message);
+                    } else {
+                        droppedEvents.incrementAndGet();
+                    }
+                }
+                default -> offerBlocking(ring, message);
+            }
+        } finally {
+            producers.decrementAndGet();
+        }
     }
 
-    public synchronized void log(String message) {
-        writer.println(message);    
+    private synchronized void logSync(String message) {
+        if (closed) { // the writer is closed and would swallow the message
+            droppedEvents.incrementAndGet();
+            return;
+        }
+        writer.println(message);
         writer.flush();
 
-        if(logArea != null){
-            SwingUtilities.invokeLater(() -> logArea.append(message + "\n"));
+        LogView view = logView;
+        if(view != null){
+            view.add(message);
+        }
+    }
+
+    /**
+     * Wait for a free slot, nudging the writer thread to drain the buffer
+     */
+    private void offerBlocking(ConcurrentRingBuffer<String> ring, String message) {
+        while (!ring.offer(message)) {
+            if (closed) {
+                droppedEvents.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(50_000);
         }
     }
 
-    public synchronized void close() {
+    /**
+     * Writer thread loop, drains the buffer in batches until the logger is closed and empty
+     */
+    private void drainLoop() {
+        long lastFlush = System.nanoTime();
+        int unflushed = 0;
+        while (true) {
+            int drained = 0;
+            String message;
+            while (drained < batchSize && (message = buffer.poll()) != null) {
+                writer.println(message);
+                LogView view = logView;
+                if (view != null) {
+                    view.add(message);
+                }
+                drained++;
+            }
+            unflushed += drained;
+
+            long now = System.nanoTime();
+            if (unflushed > 0 && (unflushed >= batchSize || now - lastFlush >= flushIntervalNanos || drained == 0)) {
+                writer.flush();
+                unflushed = 0;
+                lastFlush = now;
+            }
+
+            if (drained == 0) {
+                if (closed && buffer.isEmpty()) {
+                    return;
+                }
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    /**
+     * Get the number of messages discarded because the buffer was full or the logger closed
+     * @return long
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Close the logger, draining every buffered message to the file first.
+     * Messages logged after it are dropped and counted
+     * @return Number of messages dropped
+     */
+    public synchronized long close() {
+        if (closed) {
+            return droppedEvents.get();
+        }
+        closed = true;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            boolean interrupted = false;
+            while (writerThread.isAlive()) { // the ring has a single consumer, drain only once the writer is gone
+                try {
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            while (producers.get() > 0) { // producers that passed the closed check before close
+                LockSupport.parkNanos(50_000);
+            }
+            String message;
+            while ((message = buffer.poll()) != null) {
+                writer.println(message);
+            }
+        }
         writer.close();
+        return droppedEvents.get();
     }
 }
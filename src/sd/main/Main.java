@@ -1,83 +1,358 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.Properties;
 import java.util.Scanner;
 
 public class Main {
-    private static ElectionSimulationGUI gui;
+    private static SimulationObserver gui = SimulationObserver.NONE;
+    private static boolean headless; // no GUI, parameters from the command line or a config file, no voter limits
     private static int speedMultiplier = 1; // increase to slow down by *n times
     private static MyArrayList<Thread> threads = new MyArrayList<>(); // Store all threads
-    private static PollingStation pollingStation;
+    private static PollingStation[] pollingStations = new PollingStation[0];
+    private static ExitPoll[] exitPolls = new ExitPoll[0];
+    private static Pollster[] pollsters = new Pollster[0];
+    private static Path checkpointPath; // saved on stop or exit while the election runs, resumed from on start
+    private static volatile boolean mainDone;
+    private static VoteJournal journal; // null when approvals and votes aren't journaled
+    private static IOException journalFailure; // set when the journal fails, the election is stopped
+    private static ElectionAggregator aggregator; // only set with more than one station or an aggregation server
+    private static final int MAX_PLATFORM_VOTERS = 10;
+    private static final int MAX_VIRTUAL_VOTERS = 1_000_000;
 
     public static void main(String[] args) {
-        // Initialize the GUI
-        gui = new ElectionSimulationGUI();
-        Logger.setLogArea(gui.getLogArea());
+        Properties config;
+        try {
+            config = readConfig(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(0);
+            return;
+        }
+        if (config.getProperty("threads", "platform").equals("virtual")) {
+            ActorThreads.setMode(ActorThreads.Mode.VIRTUAL); // run every actor on a virtual thread
+        }
+        int numClerks = Math.max(1, Integer.parseInt(config.getProperty("clerks", "1")));     // poll clerks sharing the desk
+        int numBooths = Math.max(1, Integer.parseInt(config.getProperty("booths", "1")));     // voting booths in the station
+        int numStations = Math.max(1, Integer.parseInt(config.getProperty("stations", "1"))); // polling stations voting at the same time
+        if (config.containsKey("seed")) {
+            RunSeed.set(Long.parseLong(config.getProperty("seed"))); // same seed, same party choices and interview decisions
+        }
+        if (config.containsKey("clock")) {
+            SimulationClock.set(SimulationClock.parse(config.getProperty("clock"))); // real, zero or a speed-up factor
+        }
+        String aggregationServer = config.getProperty("aggregator"); // host:port of an AggregationServer combining several processes
+        headless = Boolean.parseBoolean(config.getProperty("headless", "false"));
+        if (config.containsKey("checkpoint")) {
+            if (config.containsKey("journal") || aggregationServer != null) { //both restore the same state, the server's lives in another process
+                System.err.println("Error: --checkpoint can't be combined with --journal or --aggregator.");
+                System.exit(0);
+            }
+            checkpointPath = Paths.get(config.getProperty("checkpoint"));
+        }
+
+        if (!headless) {
+            // Initialize the GUI
+            int logLines = Integer.parseInt(config.getProperty("log-lines", String.valueOf(LogView.DEFAULT_MAX_LINES)));
+            ElectionSimulationGUI window = new ElectionSimulationGUI(logLines); // lines kept in the log area
+            Logger.setLogView(window.getLogView());
+            gui = window;
+        }
         Scanner sc = new Scanner(System.in);
         Logger logger = Logger.getInstance("log.txt");
+        logger.startAsync(8192, 256, 50, Logger.OverflowPolicy.BLOCK); // batched writes from a dedicated thread
+        logger.log("Run seed: " + RunSeed.get() + " (re-run with --seed " + RunSeed.get() + ")");
+        StageTimings.startReporter(1000 * Long.parseLong(config.getProperty("timings-interval", "5"))); // seconds, 0 for none
         // Initialize the polling station, desk, and poll clerk
         //int pollingStationCapacity = 2; // Maximum capacity of the polling station
         //int voterLimit = 4; // Maximum number of voters to process
-        int numVoters = setNumberOfVoters(sc); // Number of voters to simulate
-        ElectionResults electionResults = new ElectionResults();
-        PollClerk pollClerk = new PollClerk(null, 1, electionResults);
+        int numVoters = setNumberOfVoters(sc, config.getProperty("voters")); // Number of voters to simulate (per station)
+        int capacity = setPollingStationCapactiy(sc, config.getProperty("capacity"));
+        int voterLimit = setVoterLimit(sc, config.getProperty("limit"));
 
-        pollingStation = new PollingStation(setPollingStationCapactiy(sc), setVoterLimit(sc,numVoters), pollClerk, numVoters);
+        pollingStations = new PollingStation[numStations];
+        exitPolls = new ExitPoll[numStations];
+        AggregationClient aggregationClient = null;
+        if (numStations > 1 || aggregationServer != null) {
+            aggregator = new ElectionAggregator(numStations);
+        }
+        if (aggregationServer != null) {
+            int colon = aggregationServer.lastIndexOf(':');
+            String host = colon < 0 ? "localhost" : aggregationServer.substring(0, colon);
+            int port = colon < 0 ? Integer.parseInt(aggregationServer) : Integer.parseInt(aggregationServer.substring(colon + 1));
+            try {
+                aggregationClient = new AggregationClient(host, port, numStations);
+                aggregator.setUpstream(aggregationClient);
+            } catch (IOException e) {
+                System.err.println("Error: Could not join aggregation server " + aggregationServer + ": " + e.getMessage());
+                System.exit(0);
+            }
+        }
+        if (config.containsKey("journal")) {
+            try {
+                journal = VoteJournal.open(Paths.get(config.getProperty("journal"))); // durable approvals and votes
+            } catch (IOException e) {
+                System.err.println("Error: Could not open journal " + config.getProperty("journal") + ": " + e.getMessage());
+                System.exit(0);
+            }
+            VoteJournal.Recovery recovery = journal.getRecovery();
+            logger.log("Recovered " + recovery.getNumVotes() + " votes and " + recovery.getNumApprovals()
+                    + " approvals from journal " + config.getProperty("journal") + " (run " + recovery.getLastEpoch() + ")");
+        }
+        ElectoralRoll electoralRoll = null;
+        if (config.containsKey("roll")) {
+            long rollStart = System.nanoTime();
+            try {
+                electoralRoll = ElectoralRoll.open(Paths.get(config.getProperty("roll"))); // who may vote, shared by every station
+            } catch (IOException e) {
+                System.err.println("Error: Could not open electoral roll " + config.getProperty("roll") + ": " + e.getMessage());
+                System.exit(0);
+            }
+            logger.log(String.format("Electoral roll %s: %d voters, opened in %.1f ms, %.1f MB off-heap",
+                    config.getProperty("roll"), electoralRoll.size(), (System.nanoTime() - rollStart) / 1e6, electoralRoll.offHeapBytes() / 1048576.0));
+        }
+        Checkpoint resumed = null;
+        if (checkpointPath != null && Files.exists(checkpointPath)) {
+            try {
+                resumed = Checkpoint.read(checkpointPath); // the election stopped before, go on from there
+            } catch (IOException e) {
+                System.err.println("Error: Could not read checkpoint " + checkpointPath + ": " + e.getMessage());
+                System.exit(0);
+            }
+            if (resumed.getNumStations() != numStations) {
+                System.err.println("Error: Checkpoint " + checkpointPath + " has " + resumed.getNumStations() + " stations, not " + numStations + ".");
+                System.exit(0);
+            }
+            logger.log("Resuming from checkpoint " + checkpointPath + " taken at " + new Date(resumed.getTakenAt())
+                    + ": " + resumed.getNumApproved() + " approved, " + resumed.getNumQueued() + " queued, " + resumed.getNumVotes() + " votes");
+            if (resumed.getNumRollVoters() > 0) {
+                if (electoralRoll == null) {
+                    System.err.println("Error: Checkpoint " + checkpointPath + " was taken with an electoral roll, resume it with --roll.");
+                    System.exit(0);
+                }
+                resumed.restoreElectoralRoll(electoralRoll); // once, every station shares it
+            }
+            if (aggregator != null) {
+                resumed.restoreVoterIds(aggregator);
+            }
+        }
+        pollsters = new Pollster[numStations];
+        MyArrayList<Thread> pollClerkThreads = new MyArrayList<>();
+        MyArrayList<Thread> pollsterThreads = new MyArrayList<>();
 
         System.out.println("Program is running...");
 
-        pollClerk.setPollingStationToClerk(pollingStation);
-        
-        ExitPoll exitPoll = new ExitPoll();
+        for (int s = 0; s < numStations; s++) {
+            // Each station has its own desk, clerks, booths, exit poll and results
+            ElectionResults electionResults = new ElectionResults();
+            PollClerk[] pollClerks = new PollClerk[numClerks];
+            for (int i = 0; i < numClerks; i++) {
+                pollClerks[i] = new PollClerk(null, i + 1, electionResults);
+            }
+
+            PollingStation pollingStation = new PollingStation(capacity, voterLimit, pollClerks[0], numVoters, numBooths);
+            ExitPoll exitPoll = new ExitPoll();
+            if (electoralRoll != null) {
+                pollingStation.setElectoralRoll(electoralRoll);
+            }
+            if (aggregator != null) {
+                aggregator.registerStation(pollingStation, exitPoll);
+            }
+            if (journal != null) {
+                journal.getRecovery().restore(pollingStation); // voters and votes of the interrupted run
+                pollingStation.setJournal(journal);
+            }
+            pollingStations[s] = pollingStation;
+            exitPolls[s] = exitPoll;
+
+            for (PollClerk clerk : pollClerks) {
+                clerk.setPollingStationToClerk(pollingStation);
+            }
 
-        Pollster pollster = new Pollster(exitPoll, 0.8, pollingStation, pollClerk, pollingStation.getVoterLimit());
-        
+            // voters restored from the journal already went through the exit poll
+            int interviewsLimit = pollingStation.getVoterLimit() - pollingStation.getVoterOffset();
+            Pollster pollster = new Pollster(exitPoll, 0.8, pollingStation, pollClerks[0], interviewsLimit);
+            pollsters[s] = pollster;
 
-        // Create and start voter threads
-        for (int i = 1; i <= numVoters; i++) {
-            Voter voter = new Voter(i, pollingStation, exitPoll, 0.6, 0.2);
-            Thread voterThread = new Thread(voter);
-            threads.add(voterThread);
-            voterThread.start();
+            // Voters waiting at the desk when the checkpoint was taken go back first, in the same order
+            int resumedVoters = 0;
+            if (resumed != null) {
+                Checkpoint.StationState state = resumed.restore(s, pollingStation, pollster);
+                for (; resumedVoters < state.getNumQueued(); resumedVoters++) {
+                    Voter voter = new Voter(state.getQueuedId(resumedVoters), pollingStation, exitPoll, 0.6, 0.2);
+                    pollingStation.restoreQueuedVoter(voter, state.getQueuedParty(resumedVoters));
+                    Thread voterThread = ActorThreads.newThread(voter);
+                    threads.add(voterThread);
+                    voterThread.start();
+                }
+            }
+
+            // Create and start voter threads
+            for (int i = resumedVoters + 1; i <= numVoters; i++) {
+                int voterId = resumed != null ? pollingStation.getVoterIdOffset() // ids after the ones already used
+                        : aggregator == null ? i : aggregator.nextVoterId(); // ids are unique across stations
+                Voter voter = new Voter(voterId, pollingStation, exitPoll, 0.6, 0.2);
+                Thread voterThread = ActorThreads.newThread(voter);
+                threads.add(voterThread);
+                voterThread.start();
+            }
+
+            // Create and start the poll clerk threads
+            for (int i = 0; i < numClerks; i++) {
+                Thread pollClerkThread = ActorThreads.newThread(pollClerks[i]);
+                threads.add(pollClerkThread);
+                pollClerkThreads.add(pollClerkThread);
+                pollClerkThread.start();
+            }
+
+            // Create and start the pollster thread
+            Thread pollsterThread = ActorThreads.newThread(pollster);
+            threads.add(pollsterThread);
+            pollsterThreads.add(pollsterThread);
+            pollsterThread.start();
         }
 
-        // Create and start the poll clerk thread
-        Thread pollClerkThread = new Thread(pollClerk);
-        threads.add(pollClerkThread);
-        pollClerkThread.start();
-        
-        // Create and start the pollster thread
-        Thread pollsterThread = new Thread(pollster);
-        threads.add(pollsterThread);
-        pollsterThread.start();
+        // Live standings for the GUI, and in the log at the timings interval
+        LiveTally.startPublisher(pollingStations, Long.parseLong(config.getProperty("tally-interval", "250")),
+                1000 * Long.parseLong(config.getProperty("timings-interval", "5")));
+
+        if (checkpointPath != null) {
+            Checkpoint.startSaver(checkpointPath, pollingStations, pollsters, aggregator,
+                    1000 * Long.parseLong(config.getProperty("checkpoint-interval", "0"))); // seconds, 0 for only on stop
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (!mainDone && saveCheckpoint()) { //JVM stopped mid-election
+                    Logger.getInstance("log.txt").close();
+                }
+            }, "checkpoint-on-exit"));
+        }
 
         // Wait for all voters to be processed
         try {
-            pollClerkThread.join(); // Wait for the poll clerk thread to finish
+            for (int i = 0; i < pollClerkThreads.size(); i++) {
+                pollClerkThreads.get(i).join(); // Wait for the poll clerk threads to finish
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             e.printStackTrace();
         }
 
         try {
-            pollsterThread.join();
+            for (int i = 0; i < pollsterThreads.size(); i++) {
+                pollsterThreads.get(i).join();
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             e.printStackTrace();
         }
 
+        if (aggregationClient != null) {
+            aggregationClient.close(); // every station already sent its votes
+        }
+
+        if (journal != null) {
+            journal.logStatistics();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.log("! Could not close the journal: " + e.getMessage());
+            }
+        }
+
+        Checkpoint.stopSaver();
+        if (electoralRoll != null) {
+            electoralRoll.logStatistics();
+        }
+        Recount.recountAndCheck(pollingStations); // every ballot again, on all cores, now that no clerk waits for it
+        if (checkpointPath != null && allStationsEnded()) {
+            try {
+                Files.deleteIfExists(checkpointPath); // nothing left to resume
+                logger.log("Election finished, checkpoint " + checkpointPath + " removed");
+            } catch (IOException e) {
+                logger.log("! Could not remove checkpoint " + checkpointPath + ": " + e.getMessage());
+            }
+        }
+        mainDone = true;
+
+        LiveTally.stopPublisher();
+        TallySnapshot[] finalTallies = new TallySnapshot[pollingStations.length];
+        for (int s = 0; s < pollingStations.length; s++) {
+            finalTallies[s] = pollingStations[s].getLiveTally().getLatest(); // published by the clerk at the end
+        }
+        gui.updateTally(TallySnapshot.combine(finalTallies));
+        StageTimings.stopReporter();
+        StageTimings.logTotals("Voter stage latencies:");
+
         // Close the polling station
         //System.out.println("Polling station is closed. All voters processed.");
         logger.log("Polling station is closed. All voters processed.");
 
         System.out.println("Written all logs to \"log.txt\" file");
 
-        logger.close();
+        long droppedLogEvents = logger.close();
+        if(droppedLogEvents > 0){
+            System.out.println("Logger dropped " + droppedLogEvents + " events");
+        }
         sc.close();
+
+        if (headless) {
+            for (int i = 0; i < threads.size(); i++) {
+                threads.get(i).interrupt(); // voters still waiting for a closed station, let the JVM exit
+            }
+        }
+        if (hasJournalFailed()) {
+            System.exit(1);
+        }
+    }
+
+    private static synchronized boolean hasJournalFailed() {
+        return journalFailure != null;
+    }
+
+    /**
+     * Read the settings: the file given with --config (a properties file), then the command line,
+     * which wins. Options are --key value (voters, capacity, limit, clerks, booths, stations,
+     * seed, clock, aggregator, log-lines, timings-interval, tally-interval, journal, checkpoint, checkpoint-interval, roll)
+     * and the flags --headless and --virtual-threads.
+     * @param args
+     * @return Properties
+     * @throws IOException if the config file can't be read
+     */
+    public static Properties readConfig(String[] args) throws IOException {
+        Properties config = new Properties();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--config")) {
+                try (Reader reader = new FileReader(args[i + 1])) {
+                    config.load(reader);
+                }
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--virtual-threads")) {
+                config.setProperty("threads", "virtual");
+            } else if (args[i].equals("--headless")) {
+                config.setProperty("headless", "true");
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                config.setProperty(args[i].substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        return config;
     }
     
-    public static int setPollingStationCapactiy(Scanner sc){
-        System.out.print("Polling station capacity: ");
-        int pollingStationCapacity = Integer.parseInt(sc.nextLine());
+    public static int setPollingStationCapactiy(Scanner sc, String configured){
+        int pollingStationCapacity = configured != null ? Integer.parseInt(configured) : prompt(sc, "Polling station capacity: ");
 
-        if(pollingStationCapacity < 2 || pollingStationCapacity > 5){
+        if(headless){
+            if(pollingStationCapacity < 1){
+                System.err.println("Error: Polling Station capacity must be at least 1.");
+                System.exit(0);
+            }
+        } else if(pollingStationCapacity < 2 || pollingStationCapacity > 5){ //what the GUI can show
             System.err.println("Error: Polling Station capacity must be between 2 and 5.");
             System.exit(0);
         }
@@ -85,29 +360,85 @@ public class Main {
         return pollingStationCapacity;
     }
 
-    public static int setNumberOfVoters(Scanner sc){
-        System.out.print("Number of voters: ");
-        int numOfVoters = Integer.parseInt(sc.nextLine());
+    public static int setNumberOfVoters(Scanner sc, String configured){
+        int numOfVoters = configured != null ? Integer.parseInt(configured) : prompt(sc, "Number of voters: ");
+        int maxVoters = ActorThreads.getMode() == ActorThreads.Mode.VIRTUAL ? MAX_VIRTUAL_VOTERS : MAX_PLATFORM_VOTERS;
 
-        if(numOfVoters < 3 || numOfVoters > 10){
-            System.err.println("Error: Number of voters must be between 3 and 10.");
+        if(headless){
+            if(numOfVoters < 1){
+                System.err.println("Error: Number of voters must be at least 1.");
+                System.exit(0);
+            }
+        } else if(numOfVoters < 3 || numOfVoters > maxVoters){
+            System.err.println("Error: Number of voters must be between 3 and " + maxVoters + ".");
             System.exit(0);
         }
 
         return numOfVoters;
     }
 
-    public static int setVoterLimit(Scanner sc, int numOfVoters){
-        System.out.print("Maximum number of voters to be processed: ");
-        int numOfVotersToProcess = Integer.parseInt(sc.nextLine());
+    public static int setVoterLimit(Scanner sc, String configured){
+        int numOfVotersToProcess = configured != null ? Integer.parseInt(configured) : prompt(sc, "Maximum number of voters to be processed: ");
 
         return numOfVotersToProcess;
     }
 
-    public static ElectionSimulationGUI getGUI(){
+    private static int prompt(Scanner sc, String question){
+        System.out.print(question);
+        return Integer.parseInt(sc.nextLine());
+    }
+
+    /**
+     * Save a checkpoint of the running election before it is stopped, if --checkpoint was given.
+     * The stations stay paused, so nothing happens after the checkpoint
+     * @return true if one was written
+     */
+    public static boolean saveCheckpoint() {
+        return checkpointPath != null && Checkpoint.save(checkpointPath, pollingStations, pollsters, aggregator, false);
+    }
+
+    /**
+     * Stop the election because the journal failed: no vote can be made durable anymore, so none
+     * may be counted. Every station closes, the voters inside leave without their votes counting
+     * and the process exits with status 1 once the election is wound up
+     * @param failure The journal error
+     */
+    public static synchronized void stopOnJournalFailure(IOException failure) {
+        if (journalFailure != null) {
+            return;
+        }
+        journalFailure = failure;
+        Logger.getInstance("log.txt").log("! Journal failed, stopping the election: " + failure.getMessage());
+        System.err.println("Error: Journal failed, stopping the election: " + failure.getMessage());
+        for (PollingStation pollingStation : pollingStations) {
+            pollingStation.close();
+        }
+        for (ExitPoll exitPoll : exitPolls) {
+            exitPoll.close(); // the pollsters won't get their full count of voters
+        }
+    }
+
+    private static boolean allStationsEnded() {
+        for (PollingStation pollingStation : pollingStations) {
+            if (!pollingStation.hasElectionEnded()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the GUI, or the observer that ignores updates in headless mode
+     * @return SimulationObserver
+     */
+    public static SimulationObserver getGUI(){
         return gui;
     }
 
+    public static boolean isHeadless(){
+        return headless;
+    }
+
     public static int getSpeedMultiplier() {
         return speedMultiplier;
     }
@@ -121,6 +452,26 @@ public class Main {
     }
 
     public static PollingStation getPollingStation() {
-        return pollingStation;
+        return pollingStations.length == 0 ? null : pollingStations[0];
+    }
+
+    public static PollingStation[] getPollingStations() {
+        return pollingStations;
+    }
+
+    public static ExitPoll getExitPoll() {
+        return exitPolls.length == 0 ? null : exitPolls[0];
+    }
+
+    public static ExitPoll[] getExitPolls() {
+        return exitPolls;
+    }
+
+    public static ElectionAggregator getAggregator() {
+        return aggregator;
+    }
+
+    public static VoteJournal getJournal() {
+        return journal;
     }
 }
@@ -1,17 +1,21 @@
 
+import java.util.SplittableRandom;
+
 /**
  * PollClerk is the class that represents the entity who is going to check
  * Voters (from Desk at PollingStation) so that they can be approved to vote (or not)
+ * Several clerks can share one Desk; approved ids, the voter limit and the end of the
+ * election are kept by the PollingStation so they are handled exactly once
  * @class PollClerk
  */
 public class PollClerk implements Runnable{
 
-    private MyArrayList<Integer> idList;
     private PollingStation pollingStation;
     private int clerkID;
     private int processedVoters;
     private ElectionResults electionResults;
     private boolean hasVotersToInterview;
+    private SplittableRandom random; // derived from the run seed, see RunSeed
     private Logger logger;
 
     public PollClerk(){}
@@ -19,17 +23,17 @@ public class PollClerk implements Runnable{
     //Constructor
     public PollClerk(PollingStation pollingStation, int clerkID, ElectionResults electionResults){
         this.clerkID = clerkID;
-        this.idList = new MyArrayList<Integer>();
         this.pollingStation = pollingStation;
         this.processedVoters = 0;
         this.electionResults = electionResults;
         this.hasVotersToInterview = true;
+        this.random = RunSeed.forActor(RunSeed.Actor.POLL_CLERK, pollingStation == null ? 0 : pollingStation.getStationId(), clerkID);
         this.logger = Logger.getInstance("log.txt");
     }
 
     //run method
     public void run(){
-        ElectionSimulationGUI gui = Main.getGUI();        
+        SimulationObserver gui = Main.getGUI();        
         try{
             
             pollingStation.open();
@@ -38,40 +42,35 @@ public class PollClerk implements Runnable{
             gui.updatePollClerkState("Processing voters");
 
             while(!Thread.interrupted()){
-                if(pollingStation.getVoterOffset() == pollingStation.getVoterLimit()){ //limit reached, reject remaining voters on desk queue
-                    //System.out.println("Reached the mark of voters");
-                    while(!pollingStation.getDesk().isEmpty()){
-                        Voter v = pollingStation.getDesk().exitDeskQueue();
-                        if(v != null){
-                            checkVoterID(v); //voters will be rejected
-                        }
-                    }
+                //after the voter limit is reached the desk is closed, the remaining voters on the desk queue are rejected
+                Voter v = pollingStation.getDesk().exitDeskQueue();
+                if(v == null){ //desk closed and empty (or interrupted)
                     break;
                 }
-                else{ //normal check of voters
-                    Voter v = pollingStation.getDesk().exitDeskQueue();
-                    if(v != null){
-                        checkVoterID(v);
-                    }
+                long checkStart = StageTimings.now();
+                try{
+                    checkVoterID(v);
+                } finally {
+                    pollingStation.getDesk().doneChecking(); //a checkpoint waits for the voter to be approved or rejected
                 }
+                StageTimings.record(StageTimings.Stage.ID_CHECK, checkStart);
             }
 
-            synchronized (this){ //Wait until all voters waiting on booth have voted (after voter limit reached and station closed)
-                while(pollingStation.getCurrentVoters() > 0){
-                    try{
-                        //System.out.println("- Current voters at Poll Clerk: " + pollingStation.getCurrentVoters());
-                        logger.log("- Current voters at Poll Clerk: " + pollingStation.getCurrentVoters());
-                        wait();
-                    } catch (InterruptedException e){
-                        logger.log("- Poll Clerk " + clerkID + " was interrupted while waiting for voters.");
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                }
+            //Wait until all voters waiting on booth have voted (after voter limit reached and station closed)
+            try{
+                //System.out.println("- Current voters at Poll Clerk: " + pollingStation.getCurrentVoters());
+                logger.log("- Current voters at Poll Clerk: " + pollingStation.getCurrentVoters());
+                pollingStation.awaitEmpty();
+            } catch (InterruptedException e){
+                logger.log("- Poll Clerk " + clerkID + " was interrupted while waiting for voters.");
+                Thread.currentThread().interrupt();
+                return;
             }
             this.hasVotersToInterview = false;
-            endElection();
-            gui.updatePollClerkState("Election ended");
+            if(pollingStation.claimElectionEnd()){ //only one of the clerks counts the votes
+                endElection();
+                gui.updatePollClerkState("Election ended");
+            }
 
 
 
@@ -89,7 +88,7 @@ public class PollClerk implements Runnable{
         //System.out.printf("- Poll Clerk %d is processing Voter %s\n", clerkID, v.getVoterId());
         logger.log("- Poll Clerk " + clerkID + " is processing Voter " + v.getVoterId());
         try{
-            Thread.sleep((int)(Math.random() * (10 - 5) + 5)* Main.getSpeedMultiplier()); // 5-10ms random id verification time *  Speed Multiplier
+            SimulationClock.get().await(SimulationClock.serviceTime(5, 10, random.nextDouble())); // 5-10ms random id verification time *  Speed Multiplier
         } catch (Exception e){
             logger.log("- Poll Clerk " + clerkID + " was interrupted while processing Voter " + v.getVoterId());
             Thread.currentThread().interrupt();
@@ -98,39 +97,34 @@ public class PollClerk implements Runnable{
 
         try{
             if(v != null){
-                if(isValidVoter(v)){
-                    if(pollingStation.getVoterOffset() >= pollingStation.getVoterLimit()){ //reject voters that entered after the limit of voters reached
-                        v.setIsRejectedByPollClerk();
-                        synchronized(v){
-                            v.notify();
-                        }
-                        return;
-                    }
-                    pollingStation.incrementVoterOffset();
-                    ElectionSimulationGUI gui = Main.getGUI();
-                    gui.updateVotersProcessed(pollingStation.getVoterOffset());
-                    gui.updateVotersRemaining(pollingStation.getVoterLimit() - pollingStation.getVoterOffset());
-                    if(pollingStation.getVoterOffset() >= pollingStation.getVoterLimit()){ //close the polling station in case of limit reached
-                        //System.out.printf("- Voter Limit reached, Poll Clerk " + this.clerkID + " is closing the Polling Station\n");
-                        logger.log("- Voter Limit reached, Poll Clerk " + this.clerkID + " is closing the Polling Station");
-                        pollingStation.close();
-                    }
-                    idList.add(v.getVoterId());
-                    v.setApproved(true);
-                    //System.out.printf("- Voter %s has been approved by Poll Clerk %d\n", v.getVoterId(), clerkID);
-                    logger.log("- Voter " + v.getVoterId()  + " has been approved by Poll Clerk " + clerkID);
-                    synchronized(v){
-                        v.notify();
-                    }
+                PollingStation.Admission admission = pollingStation.admitVoter(v.getVoterId());
+                if(admission == PollingStation.Admission.LIMIT_REACHED){ //reject voters that entered after the limit of voters reached
+                    v.setIsRejectedByPollClerk();
+                    return;
+                }
+                if(admission == PollingStation.Admission.NOT_REGISTERED){
+                    v.setIsRejectedByPollClerk();
+                    logger.log("- Voter " + v.getVoterId() + " is not on the electoral roll, rejected by Poll Clerk " + clerkID);
+                    return;
                 }
-                else{
+                if(admission == PollingStation.Admission.DUPLICATE){
                     v.setIsRejectedByPollClerk();
                     //System.out.printf("- Voter %s has been rejected by Poll Clerk %d\n", v.getVoterId(), clerkID);
                     logger.log("- Voter " + v.getVoterId() + " has been rejected by Poll Clerk " + clerkID);
-                    synchronized(v){
-                        v.notify();
-                    }
+                    return;
+                }
+                SimulationObserver gui = Main.getGUI();
+                int voterOffset = pollingStation.getVoterOffset();
+                gui.updateVotersProcessed(voterOffset);
+                gui.updateVotersRemaining(pollingStation.getVoterLimit() - voterOffset);
+                if(admission == PollingStation.Admission.APPROVED_LAST){ //close the polling station in case of limit reached
+                    //System.out.printf("- Voter Limit reached, Poll Clerk " + this.clerkID + " is closing the Polling Station\n");
+                    logger.log("- Voter Limit reached, Poll Clerk " + this.clerkID + " is closing the Polling Station");
+                    pollingStation.close();
                 }
+                v.setApproved(true);
+                //System.out.printf("- Voter %s has been approved by Poll Clerk %d\n", v.getVoterId(), clerkID);
+                logger.log("- Voter " + v.getVoterId()  + " has been approved by Poll Clerk " + clerkID);
             }  
         } catch (Exception e){
             Thread.currentThread().interrupt();
@@ -142,15 +136,18 @@ public class PollClerk implements Runnable{
      * End an election, count votes and display them
      */
     private void endElection(){
-        //get booth votes
-        MyArrayList<VotingParties> votes = pollingStation.getVotingBooth().getVotes();
-
-        //count votes
-        electionResults.processVotes(votes);
+        //every vote was already counted by its booth, the station is empty so one snapshot is final
+        VotingBoothPool votingBooths = pollingStation.getVotingBooths();
+        electionResults.processVotes(pollingStation.getLiveTally().publish());
+        votingBooths.logStatistics();
 
         //System.out.println("Election Results:");
-        logger.log("Election Results:");
+        ElectionAggregator aggregator = pollingStation.getAggregator();
+        logger.log(aggregator == null ? "Election Results:" : "Election Results of station " + pollingStation.getStationId() + ":");
         electionResults.display();
+        if(aggregator != null){
+            aggregator.stationFinished(pollingStation.getStationId(), electionResults);
+        }
 
     }
 
@@ -160,6 +157,10 @@ public class PollClerk implements Runnable{
      */
     public void setPollingStationToClerk(PollingStation pollingStation){
         this.pollingStation = pollingStation;
+        this.random = RunSeed.forActor(RunSeed.Actor.POLL_CLERK, pollingStation.getStationId(), clerkID);
+        if(pollingStation.getDesk().getPollClerk() != this){ //the first clerk is given to the Desk on construction
+            pollingStation.getDesk().addPollClerk(this);
+        }
     }
 
     /**
@@ -168,7 +169,7 @@ public class PollClerk implements Runnable{
      * @return true if valid, else false
      */
     public boolean isValidVoter(Voter v){
-        return !idList.query(v.getVoterId());
+        return pollingStation.isRegistered(v.getVoterId()) && !pollingStation.hasVoted(v.getVoterId());
     }
 
     /**
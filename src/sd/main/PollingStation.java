@@ -1,53 +1,190 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 // Polling Station will implement monitors for synchronization between voters
+// (a ReentrantLock with conditions rather than the object monitor, so waiting voters don't pin virtual threads)
+// It also holds the state shared by all poll clerks: approved ids, the voter limit and the end of the election
+// A checkpoint pauses the station at a safepoint: nobody enters and the desk holds its voters,
+// while the approved voters finish voting and leave the exit poll (see Checkpoint)
 public class PollingStation{
+    /**
+     * Outcome of a poll clerk asking to approve a voter
+     */
+    public enum Admission {
+        APPROVED,
+        APPROVED_LAST,  // approved, and the voter limit is now reached
+        DUPLICATE,      // this id already voted
+        NOT_REGISTERED, // this id isn't on the electoral roll
+        LIMIT_REACHED   // no more voters can be approved
+    }
+
     private final int stationCapacity; // Maximum voters that can be in the polling station at once
     private final int voterLimit; // Maximum number of voters to process
     private int voterOffset; // Number of voters processed
     private int currentVoters; // Number of voters currently in the polling station
     private boolean isOpen;
     private Desk desk;
-    private VotingBooth votingBooth;
+    private VotingBoothPool votingBooths;
+    private final LiveTally liveTally; // standings while voting, read without blocking the booths
     private int voterIdOffset; // Id offset for reborning voters
+    private final IntHashSet approvedIds; // ids of approved voters, shared by every clerk
+    private ElectoralRoll electoralRoll; // when set, who may vote and who voted, instead of approvedIds
+    private boolean hasOpened;
+    private boolean electionEnded;
+    private boolean isPaused;
+    private int votersInFlight; // approved, not yet through the exit poll
+    private int claimsInFlight; // places held for voters whose claim is at the aggregator
+    private ElectionAggregator aggregator; // null when the station runs alone
+    private VoteJournal journal; // null when approvals and votes aren't journaled
+    private int stationId;
     private Logger logger;
+    private final ReentrantLock lock;
+    private final Condition openChanged;    // station opened or closed
+    private final Condition spaceAvailable; // a voter left the station
+    private final Condition stationEmpty;   // the last voter left the station
+    private final Condition inFlightDone;   // the last approved voter left the exit poll
+    private final Condition claimSettled;   // a claim at the aggregator was answered
 
 
     public PollingStation(int capacity, int voterLimit, PollClerk pollClerk, int voterIdOffset){
+        this(capacity, voterLimit, pollClerk, voterIdOffset, 1);
+    }
+
+    public PollingStation(int capacity, int voterLimit, PollClerk pollClerk, int voterIdOffset, int numBooths){
         this.voterLimit = voterLimit;
         this.stationCapacity = capacity;
         this.isOpen = false; // polling station starts closed
-        this.votingBooth = new VotingBooth();
+        this.votingBooths = new VotingBoothPool(numBooths);
+        this.liveTally = new LiveTally(votingBooths.getVoteCounters());
         this.desk = new Desk(pollClerk);
         this.voterOffset = 0;
         this.currentVoters = 0;
         this.voterIdOffset = voterIdOffset;
+        this.approvedIds = new IntHashSet();
+        this.hasOpened = false;
+        this.electionEnded = false;
+        this.stationId = 1;
         this.logger = Logger.getInstance("log.txt");
+        this.lock = new ReentrantLock();
+        this.openChanged = lock.newCondition();
+        this.spaceAvailable = lock.newCondition();
+        this.stationEmpty = lock.newCondition();
+        this.inFlightDone = lock.newCondition();
+        this.claimSettled = lock.newCondition();
     }
 
-    public synchronized void open(){
-        this.isOpen = true;
-        //System.out.println("The polling station is open.");
-        logger.log("The polling station is open.");
-        ElectionSimulationGUI gui = Main.getGUI();
-        gui.updatePollingStationState("Open");
-        notifyAll(); // Notify all voters that the polling station is open (voters are waiting on the station's monitor)
+    /**
+     * Open the polling station, only the first call (of any clerk) has an effect
+     */
+    public void open(){
+        boolean limitReached;
+        lock.lock();
+        try {
+            if(hasOpened){
+                return;
+            }
+            this.hasOpened = true;
+            this.isOpen = true;
+            //System.out.println("The polling station is open.");
+            logger.log("The polling station is open.");
+            SimulationObserver gui = Main.getGUI();
+            gui.updatePollingStationState("Open");
+            openChanged.signalAll(); // Notify all voters that the polling station is open
+            limitReached = this.voterOffset >= this.voterLimit;
+        } finally {
+            lock.unlock();
+        }
+        if(limitReached){ //resumed after the last voter was approved, no clerk would close it
+            logger.log("Maximum number of voters reached.");
+            close();
+        }
     }
 
-    public synchronized void close(){
-        this.isOpen = false;
-        //System.out.println("The polling station is closed.");
-        logger.log("The polling station is closed.");
-        ElectionSimulationGUI gui = Main.getGUI();
-        gui.updatePollingStationState("Closed");
-        notifyAll(); // Notify all voters that the polling station is closed
+    public void close(){
+        lock.lock();
+        try {
+            if(!this.isOpen){
+                return;
+            }
+            this.isOpen = false;
+            //System.out.println("The polling station is closed.");
+            logger.log("The polling station is closed.");
+            SimulationObserver gui = Main.getGUI();
+            gui.updatePollingStationState("Closed");
+            openChanged.signalAll(); // Notify all voters that the polling station is closed
+            spaceAvailable.signalAll(); // Voters waiting for space give up
+        } finally {
+            lock.unlock();
+        }
+        desk.close(); // outside the station lock, Desk takes its own lock first
     }
 
-    public synchronized boolean pollingStationIsOpen(){
-        return this.isOpen;
+    /**
+     * Wait until the polling station is open
+     * @throws InterruptedException
+     */
+    public void awaitOpen() throws InterruptedException{
+        lock.lock();
+        try {
+            while(!isOpen){
+                openChanged.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Let a voter in, waiting for space inside the polling station
+     * @param v Voter entering
+     * @return true if the voter entered (and is counted in currentVoters), false if the station is closed
+     * @throws InterruptedException
+     */
+    public boolean enter(Voter v) throws InterruptedException{
+        lock.lock();
+        try {
+            while((stationCapacity <= currentVoters || isPaused) && isOpen){ //wait for space inside polling station
+                //System.out.println("Voter " + v.getVoterId() + " Waiting for space to enter at polling Station");
+                logger.log("Voter " + v.getVoterId() + " Waiting for space to enter at polling Station");
+                spaceAvailable.await();
+            }
+            if(!isOpen){
+                return false;
+            }
+            incrementCurrentVoters();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until there are no voters inside the polling station
+     * @throws InterruptedException
+     */
+    public void awaitEmpty() throws InterruptedException{
+        lock.lock();
+        try {
+            while(currentVoters > 0){
+                stationEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean pollingStationIsOpen(){
+        lock.lock();
+        try {
+            return this.isOpen;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public int getStationCapacity(){
         return this.stationCapacity;
-    }    
+    }
 
     public Desk getDesk(){
         return this.desk;
@@ -57,42 +194,421 @@ public class PollingStation{
         return this.voterLimit;
     }
 
-    public synchronized int getVoterOffset(){
-        return this.voterOffset;
+    public int getVoterOffset(){
+        lock.lock();
+        try {
+            return this.voterOffset;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized int getCurrentVoters(){
-        return this.currentVoters;
+    public int getCurrentVoters(){
+        lock.lock();
+        try {
+            return this.currentVoters;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public VotingBooth getVotingBooth(){
-        return votingBooth;
+    public VotingBoothPool getVotingBooths(){
+        return votingBooths;
     }
 
-    public synchronized int getVoterIdOffset(){
-        voterIdOffset++;
-        return voterIdOffset;
+    /**
+     * Get the live standings of the station
+     * @return LiveTally
+     */
+    public LiveTally getLiveTally(){
+        return liveTally;
     }
 
-    public synchronized void incrementVoterOffset(){
-        if(this.voterOffset == this.voterLimit){
-            //System.out.println("Maximum number of voters reached.");
-            logger.log("Maximum number of voters reached.");
-            return;
+    /**
+     * Make the station part of a multi-station election
+     * @param aggregator The aggregator shared by every station
+     * @param stationId Id of this station (1..number of stations)
+     */
+    public void setAggregator(ElectionAggregator aggregator, int stationId){
+        this.aggregator = aggregator;
+        this.stationId = stationId;
+    }
+
+    public ElectionAggregator getAggregator(){
+        return aggregator;
+    }
+
+    public int getStationId(){
+        return stationId;
+    }
+
+    public int getVoterIdOffset(){
+        if(aggregator != null){ //ids must not clash with the other stations' voters
+            return aggregator.nextVoterId();
+        }
+        lock.lock();
+        try {
+            voterIdOffset++;
+            return voterIdOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Approve a voter if its id hasn't voted yet and the voter limit isn't reached,
+     * as one atomic step so any number of clerks can share the station.
+     * With an aggregator the id and a place under the limit are held under the lock, the claim
+     * goes to the aggregator (a round trip to the server, for several processes) without it, and
+     * the place is taken or given back once the answer comes
+     * @param voterId
+     * @return Admission
+     */
+    public Admission admitVoter(int voterId){
+        lock.lock();
+        try {
+            int rollIndex = -1; //one roll lookup for the whole check
+            if(electoralRoll != null){
+                rollIndex = electoralRoll.indexOf(voterId);
+                if(rollIndex < 0){
+                    return Admission.NOT_REGISTERED;
+                }
+                if(electoralRoll.hasVotedAt(rollIndex)){
+                    return Admission.DUPLICATE;
+                }
+            } else if(approvedIds.contains(voterId)){
+                return Admission.DUPLICATE;
+            }
+            while(this.claimsInFlight > 0 && this.voterOffset + this.claimsInFlight >= this.voterLimit){
+                claimSettled.awaitUninterruptibly(); //the last places are held by claims that may be given back
+            }
+            if(this.voterOffset >= this.voterLimit){
+                return Admission.LIMIT_REACHED;
+            }
+            if(journal != null && journal.getFailure() != null){ //the election is being stopped, the vote couldn't count
+                return Admission.LIMIT_REACHED;
+            }
+            if(!markVoted(voterId, rollIndex)){ //another clerk, or a station sharing the roll, got it first
+                return Admission.DUPLICATE;
+            }
+            if(aggregator == null){
+                return approve(voterId);
+            }
+            this.claimsInFlight++;
+        } finally {
+            lock.unlock();
+        }
+        boolean claimed = aggregator.claimVoter(stationId, voterId);
+        lock.lock();
+        try {
+            this.claimsInFlight--;
+            claimSettled.signalAll();
+            if(!claimed){ //voted at another station, the id stays taken here too
+                return Admission.DUPLICATE;
+            }
+            return approve(voterId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Count an approved voter towards the limit (lock held)
+     * @param voterId
+     * @return Admission
+     */
+    private Admission approve(int voterId){
+        if(journal != null){
+            journal.appendApproval(stationId, voterId); //durable at the latest with the voter's vote
         }
         this.voterOffset++;
+        this.votersInFlight++;
+        return this.voterOffset == this.voterLimit ? Admission.APPROVED_LAST : Admission.APPROVED;
+    }
+
+    /**
+     * Give back a voter approved before a restart (from the journal), counting it towards the limit
+     * @param voterId
+     */
+    public void restoreApprovedVoter(int voterId){
+        lock.lock();
+        try {
+            if(markVoted(voterId)){
+                this.voterOffset++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * An approved voter is done with the exit poll
+     */
+    public void voterFinished(){
+        lock.lock();
+        try {
+            this.votersInFlight--;
+            if(this.votersInFlight == 0){
+                inFlightDone.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start bringing the station to a safepoint: voters stop entering and the clerks stop taking
+     * voters from the desk, the voters already approved carry on
+     */
+    public void pause(){
+        lock.lock();
+        try {
+            this.isPaused = true;
+        } finally {
+            lock.unlock();
+        }
+        desk.pause();
     }
 
+    /**
+     * Let voters enter and clerks check them again after pause
+     */
+    public void resume(){
+        lock.lock();
+        try {
+            this.isPaused = false;
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        desk.resume();
+    }
+
+    /**
+     * Wait for the safepoint of a paused station: no voter being checked and every approved voter
+     * through the exit poll. At that point only the desk queue holds voters, and the counters, ids
+     * and votes don't change until resume
+     * @param deadline System.nanoTime() to give up at
+     * @return true at the safepoint, false on timeout
+     * @throws InterruptedException
+     */
+    public boolean awaitSafepoint(long deadline) throws InterruptedException{
+        if(!desk.awaitChecksDone(deadline)){ //no clerk can approve anyone after this
+            return false;
+        }
+        lock.lock();
+        try {
+            while(votersInFlight > 0){
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    return false;
+                }
+                inFlightDone.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the ids of the voters approved (or rejected as having voted at another station).
+     * With an electoral roll the station keeps none, they are in the roll's voted bitmap,
+     * shared by every station (see ElectoralRoll.getVotedIds)
+     * @return ids, in no particular order, empty with an electoral roll
+     */
+    public int[] getApprovedIds(){
+        lock.lock();
+        try {
+            if(electoralRoll != null){
+                return new int[0];
+            }
+            return approvedIds.toArray();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the last voter id handed out to a reborn voter, without taking a new one
+     * @return int
+     */
+    public int getLastVoterId(){
+        lock.lock();
+        try {
+            return voterIdOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Restore the counters and ids of a checkpoint, before the station opens
+     * @param voterOffset Voters approved
+     * @param lastVoterId Last voter id handed out
+     * @param ids Ids already approved
+     */
+    public void restoreState(int voterOffset, int lastVoterId, int[] ids){
+        lock.lock();
+        try {
+            for(int id : ids){
+                markVoted(id);
+            }
+            this.voterOffset = voterOffset;
+            this.voterIdOffset = Math.max(this.voterIdOffset, lastVoterId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put back a voter that was waiting at the desk when the checkpoint was taken, in queue order
+     * @param v Voter, not started yet
+     * @param party The party it was going to vote for
+     */
+    public void restoreQueuedVoter(Voter v, VotingParties party){
+        v.resumeAtDesk(party);
+        incrementCurrentVoters();
+        desk.restoreVoter(v);
+    }
+
+    /**
+     * Journal the approvals and votes of this station
+     * @param journal
+     */
+    public void setJournal(VoteJournal journal){
+        this.journal = journal;
+        votingBooths.setJournal(journal, stationId);
+    }
+
+    /**
+     * Check if a voter id was already approved
+     * @param voterId
+     * @return boolean
+     */
+    public boolean hasVoted(int voterId){
+        lock.lock();
+        try {
+            return electoralRoll != null ? electoralRoll.hasVoted(voterId) : approvedIds.contains(voterId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check if a voter id may vote here: on the electoral roll, or any id without one
+     * @param voterId
+     * @return boolean
+     */
+    public boolean isRegistered(int voterId){
+        return electoralRoll == null || electoralRoll.isRegistered(voterId);
+    }
+
+    /**
+     * Get the electoral roll voters are checked against
+     * @return ElectoralRoll, null without one
+     */
+    public ElectoralRoll getElectoralRoll(){
+        return electoralRoll;
+    }
+
+    /**
+     * Check voter ids against an electoral roll, which also records who voted
+     * (off the heap, and shared with the other stations given the same roll)
+     * @param electoralRoll
+     */
+    public void setElectoralRoll(ElectoralRoll electoralRoll){
+        lock.lock();
+        try {
+            this.electoralRoll = electoralRoll;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-    public synchronized void incrementCurrentVoters(){
-        this.currentVoters++;
-        ElectionSimulationGUI gui = Main.getGUI();
-        gui.updateVotersInside(this.currentVoters);
+    /**
+     * Record an id as voted (lock held)
+     * @return true if it wasn't yet
+     */
+    private boolean markVoted(int voterId){
+        return markVoted(voterId, electoralRoll == null ? -1 : electoralRoll.indexOf(voterId));
+    }
+
+    private boolean markVoted(int voterId, int rollIndex){
+        if(electoralRoll == null){
+            return approvedIds.add(voterId);
+        }
+        return rollIndex >= 0 && electoralRoll.markVotedAt(rollIndex);
+    }
+
+    /**
+     * Check if the votes of the station were counted
+     * @return boolean
+     */
+    public boolean hasElectionEnded(){
+        lock.lock();
+        try {
+            return electionEnded;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized void decrementCurrentVoters(){
-        this.currentVoters--;
-        ElectionSimulationGUI gui = Main.getGUI();
-        gui.updateVotersInside(this.currentVoters);
+    /**
+     * Claim the end of the election (counting votes), only the first caller gets it
+     * @return true for the first caller
+     */
+    public boolean claimElectionEnd(){
+        lock.lock();
+        try {
+            if(electionEnded){
+                return false;
+            }
+            electionEnded = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void incrementVoterOffset(){
+        lock.lock();
+        try {
+            if(this.voterOffset == this.voterLimit){
+                //System.out.println("Maximum number of voters reached.");
+                logger.log("Maximum number of voters reached.");
+                return;
+            }
+            this.voterOffset++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    public void incrementCurrentVoters(){
+        lock.lock();
+        try {
+            this.currentVoters++;
+            SimulationObserver gui = Main.getGUI();
+            gui.updateVotersInside(this.currentVoters);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void decrementCurrentVoters(){
+        lock.lock();
+        try {
+            this.currentVoters--;
+            SimulationObserver gui = Main.getGUI();
+            gui.updateVotersInside(this.currentVoters);
+            spaceAvailable.signal(); // one voter can take the freed place
+            if(this.currentVoters == 0){
+                stationEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
-}
\ No newline at end of file
+}
@@ -4,7 +4,7 @@
  * The pollster is responsible for interviewing voters who have finished voting and are in the exit poll queue.
  * The pollster selects voters randomly based on a selection probability and records their responses.
  */
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Pollster Class Represents the pollster who is going to choose voters
@@ -12,13 +12,14 @@ import java.util.Random;
  * @class Pollster
  */
 public class Pollster implements  Runnable{
+    private static final long POLL_TIMEOUT_MS = 100; // how long to sleep on an empty exit poll before re-checking
     private final ExitPoll exitPoll;
-    private final Random random;
+    private final SplittableRandom random; // derived from the run seed, see RunSeed
     private final double selectionProbability;
     private final PollingStation pollingStation;
     private final PollClerk stationClerk;
     private int interviewsLimit; //Pollster keeps track of the limit of voters to interview
-    private int interviewOffset;
+    private volatile int interviewOffset; // read by a checkpoint
     private Logger logger;
 
     /**
@@ -26,7 +27,7 @@ public class Pollster implements  Runnable{
      */
     public Pollster(ExitPoll exitPoll, double selectionProbability, PollingStation  pollingStation, PollClerk stationClerk, int interviewsLimit){
         this.exitPoll = exitPoll;
-        this.random = new Random();
+        this.random = RunSeed.forActor(RunSeed.Actor.POLLSTER, pollingStation.getStationId(), 0);
         this.selectionProbability = selectionProbability;
         this.pollingStation = pollingStation;
         this.stationClerk = stationClerk;
@@ -38,40 +39,78 @@ public class Pollster implements  Runnable{
     
     /**
      * Run method for the pollster thread.
-     * The pollster continuously interviews voters from the exit poll queue until the interview limit is reached.
+     * The pollster sleeps until voters reach the exit poll, then interviews every waiting voter,
+     * until the interview limit is reached or the exit poll is closed.
      */
     @Override
     public void run() {
-        ElectionSimulationGUI gui = Main.getGUI();
+        SimulationObserver gui = Main.getGUI();
         gui.updatePollsterState("Interviewing voters");
 
+        MyArrayList<Voter> batch = new MyArrayList<>();
         while (true) { 
             //System.out.printf("", stationClerk.getHasVotersToInterview());
             if(interviewOffset >= interviewsLimit){
                 //System.out.println("> Pollster is done");
                 logger.log("> Pollster is done");
+                exitPoll.close(); // no one else will be interviewed, don't let late voters wait for it
                 gui.updatePollsterState("Done");
                 break;
             }
-            Voter voter = exitPoll.removeVoter(); //get voter from exit poll
 
-            if(voter == null){ //exit poll is empty
-                continue;
+            batch.clear();
+            try {
+                exitPoll.drainTo(batch, interviewsLimit - interviewOffset, POLL_TIMEOUT_MS); //sleep until voters arrive
+            } catch (InterruptedException e) {
+                logger.log("> Pollster was interrupted while waiting for voters");
+                Thread.currentThread().interrupt();
+                break;
             }
-            
-            if(random.nextDouble() < selectionProbability){ //pollster selects voter
-                voter.respondToPollster();
-            } else {
-                //System.out.println("> Voter " + voter.getVoterId() + " was not selected by the pollster.");
-                logger.log("> Voter " + voter.getVoterId() + " was not selected by the pollster.");
+
+            if(batch.size() == 0){ //timed out, or exit poll closed
+                if(exitPoll.isClosed()){
+                    logger.log("> Exit poll closed, Pollster is leaving");
+                    gui.updatePollsterState("Done");
+                    break;
+                }
+                continue;
             }
 
-            synchronized(voter){
-                voter.setWasInterviewd();
-                voter.notify();
+            for (int i = 0; i < batch.size(); i++) {
+                interview(batch.get(i));
             }
+        }
+    }
 
-            interviewOffset++;
+    /**
+     * Interview a voter (if selected) and let it leave the exit poll.
+     * @param voter The voter taken from the exit poll.
+     */
+    private void interview(Voter voter) {
+        if(random.nextDouble() < selectionProbability){ //pollster selects voter
+            voter.respondToPollster();
+        } else {
+            //System.out.println("> Voter " + voter.getVoterId() + " was not selected by the pollster.");
+            logger.log("> Voter " + voter.getVoterId() + " was not selected by the pollster.");
         }
+
+        interviewOffset++; // before the voter is let go, a checkpoint waits for the voter
+        voter.setWasInterviewd(); // wakes the voter
+    }
+
+    /**
+     * Get the number of voters taken from the exit poll so far
+     * @return int
+     */
+    public int getInterviews() {
+        return interviewOffset;
+    }
+
+    /**
+     * Continue from the progress saved in a checkpoint, before the pollster starts
+     * @param interviews Voters already taken from the exit poll
+     */
+    public void restoreInterviews(int interviews) {
+        this.interviewOffset = interviews;
     }
 }
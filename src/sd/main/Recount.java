@@ -0,0 +1,207 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Recount.java
+ * This class recounts the stored ballots of every station on a fork-join pool, after the voting,
+ * and checks the result against the live tally. The ballots of each station are cut into shards of
+ * consecutive whole words of its BallotStore, enough shards to keep every worker busy. A RecursiveAction
+ * splits the shards in halves until one is left, which is counted with BallotStore.addCounts into its
+ * own slot, so workers never share a counter. The partial counts are then added up per station and party.
+ * The tally of a station is the sum of its booth counters and the recount is the sum of its ballots,
+ * kept apart since the vote was cast, so a mismatch means a vote was lost or counted twice.
+ */
+public final class Recount {
+    private static final VotingParties[] PARTIES = VotingParties.values();
+    private static final long MIN_SHARD_BALLOTS = 1L << 20; // smaller shards cost more in tasks than they save
+    private static final int SHARDS_PER_WORKER = 4;          // so a slow worker doesn't hold the others up
+
+    private final long[][] counts; // indexed by station, then party ordinal
+    private final int numShards;
+    private final int parallelism;
+    private final long nanos;
+
+    private Recount(long[][] counts, int numShards, int parallelism, long nanos) {
+        this.counts = counts;
+        this.numShards = numShards;
+        this.parallelism = parallelism;
+        this.nanos = nanos;
+    }
+
+    /**
+     * ShardTask.
+     * Counts the shards from first to last (exclusive), splitting them in halves.
+     */
+    private static final class ShardTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BallotStore[] stores;
+        private final int[] shardStore;
+        private final long[] shardFrom;
+        private final long[] shardTo;
+        private final long[][] shardCounts;
+        private final int first;
+        private final int last;
+
+        private ShardTask(BallotStore[] stores, int[] shardStore, long[] shardFrom, long[] shardTo,
+                          long[][] shardCounts, int first, int last) {
+            this.stores = stores;
+            this.shardStore = shardStore;
+            this.shardFrom = shardFrom;
+            this.shardTo = shardTo;
+            this.shardCounts = shardCounts;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                stores[shardStore[first]].addCounts(shardFrom[first], shardTo[first], shardCounts[first]);
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new ShardTask(stores, shardStore, shardFrom, shardTo, shardCounts, first, middle),
+                    new ShardTask(stores, shardStore, shardFrom, shardTo, shardCounts, middle, last));
+        }
+    }
+
+    /**
+     * Count the ballots of several stores, as they are when it starts
+     * @param stores Ballots of every station
+     * @param pool Pool to count on, its parallelism sets the number of shards
+     * @return Recount
+     */
+    public static Recount count(BallotStore[] stores, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        long[] sizes = new long[stores.length];
+        long total = 0;
+        for (int s = 0; s < stores.length; s++) {
+            sizes[s] = stores[s].size();
+            total += sizes[s];
+        }
+        long shardBallots = Math.max(MIN_SHARD_BALLOTS, total / ((long) pool.getParallelism() * SHARDS_PER_WORKER));
+        shardBallots = (shardBallots + BallotStore.PER_WORD - 1) / BallotStore.PER_WORD * BallotStore.PER_WORD; // whole words
+
+        int numShards = 0;
+        for (long size : sizes) {
+            numShards += (int) ((size + shardBallots - 1) / shardBallots);
+        }
+        int[] shardStore = new int[numShards];
+        long[] shardFrom = new long[numShards];
+        long[] shardTo = new long[numShards];
+        long[][] shardCounts = new long[numShards][PARTIES.length];
+        int shard = 0;
+        for (int s = 0; s < stores.length; s++) {
+            for (long from = 0; from < sizes[s]; from += shardBallots) {
+                shardStore[shard] = s;
+                shardFrom[shard] = from;
+                shardTo[shard] = Math.min(sizes[s], from + shardBallots);
+                shard++;
+            }
+        }
+        if (numShards > 0) {
+            pool.invoke(new ShardTask(stores, shardStore, shardFrom, shardTo, shardCounts, 0, numShards));
+        }
+
+        long[][] counts = new long[stores.length][PARTIES.length];
+        for (shard = 0; shard < numShards; shard++) {
+            for (int p = 0; p < PARTIES.length; p++) {
+                counts[shardStore[shard]][p] += shardCounts[shard][p];
+            }
+        }
+        return new Recount(counts, numShards, pool.getParallelism(), System.nanoTime() - start);
+    }
+
+    /**
+     * Recount the ballots of every station on the common pool, check them against the live tally
+     * and log both. Stations still open aren't checked, their votes may be cast in between
+     * @param stations Stations of this process
+     * @return Number of stations whose recount doesn't match their tally
+     */
+    public static int recountAndCheck(PollingStation[] stations) {
+        Logger logger = Logger.getInstance("log.txt");
+        BallotStore[] stores = new BallotStore[stations.length];
+        TallySnapshot[] tallies = new TallySnapshot[stations.length];
+        for (int s = 0; s < stations.length; s++) {
+            stores[s] = stations[s].getVotingBooths().getBallots();
+            tallies[s] = stations[s].getLiveTally().snapshot();
+        }
+        Recount recount = count(stores, ForkJoinPool.commonPool());
+        logger.log(String.format("Recount of %d ballots in %d shards on %d threads: %.3f ms",
+                recount.getTotal(), recount.numShards, recount.parallelism, recount.nanos / 1_000_000.0));
+
+        int mismatches = 0;
+        for (int s = 0; s < stations.length; s++) {
+            int stationId = stations[s].getStationId();
+            if (!stations[s].hasElectionEnded()) {
+                logger.log("Recount of station " + stationId + " not checked, the station is still open");
+                continue;
+            }
+            String difference = recount.compare(s, tallies[s]);
+            if (difference.isEmpty()) {
+                logger.log("Recount of station " + stationId + " matches the live tally");
+            } else {
+                logger.log("! Recount of station " + stationId + " doesn't match the live tally:" + difference);
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Compare the recount of a station with its tally
+     * @param store Position of the station's ballots in the recount
+     * @param tally The tally
+     * @return The parties that differ, as " PARTY ballots N tally M", empty if none does
+     */
+    public String compare(int store, TallySnapshot tally) {
+        StringBuilder difference = new StringBuilder();
+        for (VotingParties party : PARTIES) {
+            long ballots = counts[store][party.ordinal()];
+            if (ballots != tally.get(party)) {
+                difference.append(' ').append(party).append(" ballots ").append(ballots).append(" tally ").append(tally.get(party));
+            }
+        }
+        return difference.toString();
+    }
+
+    /**
+     * Get the recounted votes of a party at a station
+     * @param store Position of the station's ballots in the recount
+     * @param party
+     * @return long
+     */
+    public long get(int store, VotingParties party) {
+        return counts[store][party.ordinal()];
+    }
+
+    /**
+     * Get the number of ballots recounted
+     * @return long
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long[] station : counts) {
+            for (long count : station) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of shards the ballots were cut into
+     * @return int
+     */
+    public int getNumShards() {
+        return numShards;
+    }
+
+    /**
+     * Get how long the recount took
+     * @return Nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.SplittableRandom;
+
+/**
+ * RunSeed.java
+ * This class holds the seed of a simulation run and derives the random generator of every actor
+ * from it. Each actor gets its own SplittableRandom, so actors never contend on a shared
+ * generator, and the generator only depends on the run seed and the actor's identity (not on
+ * thread start order), so the same seed gives every voter the same party choices and every
+ * pollster the same sequence of selection decisions.
+ * Thread interleaving still decides which voter meets which clerk, booth or interview.
+ */
+public final class RunSeed {
+    public enum Actor {
+        VOTER,
+        POLL_CLERK,
+        POLLSTER
+    }
+
+    private static volatile long seed = new SplittableRandom().nextLong();
+
+    private RunSeed() {
+    }
+
+    /**
+     * Set the seed of the run, before any actor is created
+     * @param newSeed
+     */
+    public static void set(long newSeed) {
+        seed = newSeed;
+    }
+
+    /**
+     * Get the seed of the run
+     * @return long
+     */
+    public static long get() {
+        return seed;
+    }
+
+    /**
+     * Create the random generator of an actor
+     * @param actor Kind of actor
+     * @param stationId Station the actor belongs to
+     * @param actorId Id of the actor in its station (voter id, clerk id...)
+     * @return SplittableRandom, only to be used by that actor
+     */
+    public static SplittableRandom forActor(Actor actor, int stationId, int actorId) {
+        long key = ((long) actor.ordinal() << 56) ^ ((long) stationId << 32) ^ (actorId & 0xFFFFFFFFL);
+        return new SplittableRandom(mix(seed + mix(key)));
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads nearby keys over unrelated seeds
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
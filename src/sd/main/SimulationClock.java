@@ -0,0 +1,193 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SimulationClock.java
+ * This class decides how long the actors really wait for a service time (checking an id,
+ * voting, answering the pollster). Service times are given in nanoseconds and waited with
+ * LockSupport.parkNanos, so they aren't truncated to whole milliseconds.
+ * REAL waits the service time, SCALED waits it divided by a (possibly fractional) speed-up,
+ * and ZERO_DELAY doesn't wait at all, which leaves only the cost of the synchronization itself.
+ * The clock is shared by every actor and chosen before the simulation starts.
+ */
+public abstract class SimulationClock {
+    public enum Mode {
+        REAL,
+        SCALED,
+        ZERO_DELAY
+    }
+
+    private static volatile SimulationClock current = real();
+
+    /**
+     * Wait for a service time, as measured by this clock
+     * @param nanos Service time in simulated nanoseconds
+     * @throws InterruptedException if the actor is interrupted while waiting
+     */
+    public abstract void await(long nanos) throws InterruptedException;
+
+    /**
+     * Get the simulated time
+     * @return Nanoseconds, only differences between two calls are meaningful
+     */
+    public abstract long nanoTime();
+
+    /**
+     * Get the mode of the clock
+     * @return Mode
+     */
+    public abstract Mode getMode();
+
+    /**
+     * Get the clock used by the actors
+     * @return SimulationClock
+     */
+    public static SimulationClock get() {
+        return current;
+    }
+
+    /**
+     * Select the clock used by the actors
+     * @param clock
+     */
+    public static void set(SimulationClock clock) {
+        current = clock;
+    }
+
+    /**
+     * Clock waiting the service times as they are
+     * @return SimulationClock
+     */
+    public static SimulationClock real() {
+        return new Scaled(1.0, Mode.REAL);
+    }
+
+    /**
+     * Clock running faster (or slower) than real time
+     * @param speedUp Simulated time that passes per unit of real time, e.g. 10 or 2.5
+     * @return SimulationClock
+     */
+    public static SimulationClock scaled(double speedUp) {
+        if (!(speedUp > 0) || Double.isInfinite(speedUp)) {
+            throw new IllegalArgumentException("Speed-up must be a positive number: " + speedUp);
+        }
+        return new Scaled(speedUp, Mode.SCALED);
+    }
+
+    /**
+     * Clock where service times take no time at all
+     * @return SimulationClock
+     */
+    public static SimulationClock zeroDelay() {
+        return new ZeroDelay();
+    }
+
+    /**
+     * Parse a clock from the command line: "real", "zero", or a speed-up factor such as "10" or "2.5x"
+     * @param spec
+     * @return SimulationClock
+     */
+    public static SimulationClock parse(String spec) {
+        String s = spec.trim().toLowerCase();
+        if (s.equals("real")) {
+            return real();
+        }
+        if (s.equals("zero")) {
+            return zeroDelay();
+        }
+        if (s.endsWith("x")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return scaled(Double.parseDouble(s));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown clock \"" + spec + "\", use real, zero or a speed-up factor");
+        }
+    }
+
+    /**
+     * Draw a service time uniformly between two bounds, scaled by Main's speed multiplier
+     * @param minMillis Shortest service time in milliseconds
+     * @param maxMillis Longest service time in milliseconds (exclusive)
+     * @param random A number in [0, 1)
+     * @return Service time in nanoseconds
+     */
+    public static long serviceTime(double minMillis, double maxMillis, double random) {
+        double millis = minMillis + random * (maxMillis - minMillis);
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1) * Main.getSpeedMultiplier());
+    }
+
+    /**
+     * Scaled.
+     * Parks until the scaled deadline, parking again after early (spurious) wakeups.
+     */
+    private static final class Scaled extends SimulationClock {
+        private final double speedUp;
+        private final Mode mode;
+        private final long origin;
+
+        private Scaled(double speedUp, Mode mode) {
+            this.speedUp = speedUp;
+            this.mode = mode;
+            this.origin = System.nanoTime();
+        }
+
+        @Override
+        public void await(long nanos) throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long deadline = System.nanoTime() + (long) (nanos / speedUp);
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+
+        @Override
+        public long nanoTime() {
+            return (long) ((System.nanoTime() - origin) * speedUp);
+        }
+
+        @Override
+        public Mode getMode() {
+            return mode;
+        }
+
+        @Override
+        public String toString() {
+            return mode == Mode.REAL ? "real time" : speedUp + "x real time";
+        }
+    }
+
+    /**
+     * ZeroDelay.
+     * Only checks for interrupts, like a sleep of 0 would.
+     */
+    private static final class ZeroDelay extends SimulationClock {
+        @Override
+        public void await(long nanos) throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public Mode getMode() {
+            return Mode.ZERO_DELAY;
+        }
+
+        @Override
+        public String toString() {
+            return "zero delay";
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * SimulationObserver.java
+ * This interface receives the state changes of the actors, for display.
+ * ElectionSimulationGUI shows them in Swing; in headless mode the actors talk to NONE,
+ * whose methods do nothing, so the hot paths post no events and allocate nothing.
+ */
+public interface SimulationObserver {
+    /**
+     * Observer that ignores every update (headless mode)
+     */
+    SimulationObserver NONE = new SimulationObserver() {};
+
+    /**
+     * Update the state of a voter.
+     * @param voterId The ID of the voter.
+     * @param state The new state of the voter.
+     */
+    default void updateVoterState(int voterId, String state) {}
+
+    /**
+     * Update the state of the poll clerk.
+     * @param state The new state of the poll clerk.
+     */
+    default void updatePollClerkState(String state) {}
+
+    /**
+     * Update the state of the pollster.
+     * @param state The new state of the pollster.
+     */
+    default void updatePollsterState(String state) {}
+
+    /**
+     * Update the state of the polling station.
+     * @param state The new state of the polling station.
+     */
+    default void updatePollingStationState(String state) {}
+
+    /**
+     * Update the number of voters inside the polling station.
+     * @param count The new number of voters inside the polling station.
+     */
+    default void updateVotersInside(int count) {}
+
+    /**
+     * Update the number of voters processed.
+     * @param count The new number of voters processed.
+     */
+    default void updateVotersProcessed(int count) {}
+
+    /**
+     * Update the number of voters remaining.
+     * @param count The new number of voters remaining.
+     */
+    default void updateVotersRemaining(int count) {}
+
+    /**
+     * Update the live standings.
+     * @param tally Votes of every party so far, of every station of this process.
+     */
+    default void updateTally(TallySnapshot tally) {}
+}
@@ -0,0 +1,138 @@
+/**
+ * StageTimings.java
+ * This class holds one LatencyHistogram per stage of a voter's visit to the polling station, shared by
+ * every station of the process. Durations are taken with the SimulationClock, so with a scaled clock
+ * they are in simulated time. Recording is always on; a report with p50/p99/p99.9/max per stage is
+ * logged at the end of the election and, if a reporter is started, every few seconds while it runs
+ * (for the interval since the last report).
+ */
+public final class StageTimings {
+    public enum Stage {
+        STATION_ENTRY("Waiting for space"),
+        DESK_QUEUE("Desk queue"),
+        ID_CHECK("ID check"),
+        BOOTH_QUEUE("Booth queue"),
+        CAST_VOTE("Casting vote"),
+        EXIT_POLL("Exit poll wait");
+
+        private final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private static final LatencyHistogram.Snapshot[] lastReported = new LatencyHistogram.Snapshot[STAGES.length];
+    private static Thread reporter;
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            lastReported[i] = histograms[i].snapshot();
+        }
+    }
+
+    private StageTimings() {
+    }
+
+    /**
+     * Get the current time to measure a stage from
+     * @return Nanoseconds of the simulation clock
+     */
+    public static long now() {
+        return SimulationClock.get().nanoTime();
+    }
+
+    /**
+     * Record the end of a stage
+     * @param stage
+     * @param startNanos Value of now() when the stage started
+     */
+    public static void record(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].record(now() - startNanos);
+    }
+
+    /**
+     * Get the histogram of a stage
+     * @param stage
+     * @return LatencyHistogram
+     */
+    public static LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Log every stage since the start of the election
+     * @param title First line of the report
+     */
+    public static void logTotals(String title) {
+        StringBuilder report = new StringBuilder(title);
+        for (Stage stage : STAGES) {
+            report.append('\n').append(format(stage, histograms[stage.ordinal()].snapshot()));
+        }
+        Logger.getInstance("log.txt").log(report.toString()); // one message, not interleaved with the actors
+    }
+
+    /**
+     * Log every stage since the previous interval report
+     * @param title First line of the report
+     */
+    public static synchronized void logInterval(String title) {
+        StringBuilder report = new StringBuilder(title);
+        for (Stage stage : STAGES) {
+            LatencyHistogram.Snapshot current = histograms[stage.ordinal()].snapshot();
+            report.append('\n').append(format(stage, current.since(lastReported[stage.ordinal()])));
+            lastReported[stage.ordinal()] = current;
+        }
+        Logger.getInstance("log.txt").log(report.toString());
+    }
+
+    /**
+     * Start logging an interval report periodically, on a daemon thread
+     * @param periodMillis Time between reports, in real milliseconds
+     */
+    public static synchronized void startReporter(long periodMillis) {
+        if (reporter != null || periodMillis <= 0) {
+            return;
+        }
+        reporter = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(periodMillis);
+                    logInterval("Voter stage latencies, last " + periodMillis / 1000.0 + " s:");
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }, "stage-timings-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Stop the periodic reports
+     */
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.interrupt();
+            reporter = null;
+        }
+    }
+
+    private static String format(Stage stage, LatencyHistogram.Snapshot snapshot) {
+        return String.format("  %-18s count %8d  p50 %9.3f ms  p99 %9.3f ms  p99.9 %9.3f ms  max %9.3f ms",
+                stage.getDescription(), snapshot.getCount(),
+                millis(snapshot.getPercentile(50)), millis(snapshot.getPercentile(99)),
+                millis(snapshot.getPercentile(99.9)), millis(snapshot.getMax()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StripedVoteCounter.java
+ * This class records votes as one striped counter per party, indexed by VotingParties.ordinal().
+ * Each counter is a LongAdder, so many booths can record votes at the same time without a
+ * shared lock and without keeping an object reference per vote. Reading the totals is O(parties).
+ */
+public class StripedVoteCounter {
+    private final LongAdder[] counters;
+
+    /**
+     * Constructor for StripedVoteCounter.
+     */
+    public StripedVoteCounter() {
+        counters = new LongAdder[VotingParties.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record one vote for a party.
+     * @param party The party voted for.
+     */
+    public void record(VotingParties party) {
+        counters[party.ordinal()].increment();
+    }
+
+    /**
+     * Record several votes for a party at once (e.g. recovered from the journal).
+     * @param party The party voted for.
+     * @param votes Number of votes.
+     */
+    public void add(VotingParties party, long votes) {
+        counters[party.ordinal()].add(votes);
+    }
+
+    /**
+     * Get the number of votes recorded for a party.
+     * @param party The party to query.
+     * @return The vote count.
+     */
+    public long count(VotingParties party) {
+        return counters[party.ordinal()].sum();
+    }
+
+    /**
+     * Get the number of votes recorded for all parties.
+     * @return The total vote count.
+     */
+    public long total() {
+        long total = 0;
+        for (LongAdder counter : counters) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Get the vote counts of every party, indexed by ordinal.
+     * Not atomic across parties while votes are still being recorded (see LiveTally).
+     * @return Array of vote counts.
+     */
+    public long[] snapshot() {
+        long[] counts = new long[counters.length];
+        addTo(counts);
+        return counts;
+    }
+
+    /**
+     * Add the vote counts of every party to an array, indexed by ordinal, without allocating.
+     * @param counts Array to add to.
+     */
+    public void addTo(long[] counts) {
+        for (int i = 0; i < counters.length; i++) {
+            counts[i] += counters[i].sum();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * TallySnapshot.java
+ * This class is an immutable copy of the vote counts of every party at one moment, as read from a
+ * LiveTally while voting goes on. The total is always the sum of the party counts. A snapshot is
+ * exact when it matches the counters at a single instant; under very heavy voting a reader may
+ * give up waiting for one and return counts read over a short interval instead.
+ */
+public final class TallySnapshot {
+    private static final VotingParties[] PARTIES = VotingParties.values();
+
+    private final long[] counts;
+    private final long total;
+    private final boolean exact;
+    private final long takenAt; // SimulationClock nanos
+
+    /**
+     * Constructor for TallySnapshot
+     * @param counts Votes of every party, indexed by VotingParties.ordinal(), not copied
+     * @param exact Whether the counts were all read at one instant
+     */
+    TallySnapshot(long[] counts, boolean exact) {
+        this.counts = counts;
+        long sum = 0;
+        for (long c : counts) {
+            sum += c;
+        }
+        this.total = sum;
+        this.exact = exact;
+        this.takenAt = SimulationClock.get().nanoTime();
+    }
+
+    /**
+     * Add up snapshots (e.g. of every station)
+     * @param snapshots
+     * @return TallySnapshot, exact only if all of them are
+     */
+    public static TallySnapshot combine(TallySnapshot... snapshots) {
+        long[] sum = new long[PARTIES.length];
+        boolean exact = true;
+        for (TallySnapshot snapshot : snapshots) {
+            if (snapshot == null) {
+                continue;
+            }
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += snapshot.counts[i];
+            }
+            exact &= snapshot.exact;
+        }
+        return new TallySnapshot(sum, exact);
+    }
+
+    /**
+     * Get the votes of a party
+     * @param party
+     * @return long
+     */
+    public long get(VotingParties party) {
+        return counts[party.ordinal()];
+    }
+
+    /**
+     * Get the total number of votes
+     * @return long
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Check if the counts were all read at one instant
+     * @return boolean
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Get when the snapshot was taken
+     * @return Nanoseconds of the simulation clock
+     */
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < PARTIES.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(PARTIES[i]).append(' ').append(counts[i]);
+        }
+        return text.append(" (total ").append(total).append(')').toString();
+    }
+}
@@ -0,0 +1,458 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * VoteJournal.java
+ * This class is the durable record of an election: an append-only binary write-ahead journal of
+ * approvals and votes in a memory-mapped file, mapped in segments as it grows.
+ * Every record is 16 bytes: type, party, station id, voter id (0 for votes, which stay anonymous),
+ * the epoch of the run that wrote it, and a checksum of the rest.
+ *
+ * Appending only copies a record into the mapping under a short lock. A vote is then committed:
+ * the booth waits until the record is on disk. One flusher thread forces everything appended so far
+ * with a single msync and wakes every waiter at once, so concurrent castVote calls share each forced
+ * write (group commit) and a vote waits at most for the force in progress plus its own.
+ * Approvals don't wait: the journal is sequential, so a durable vote implies a durable approval.
+ *
+ * On open, recover() reads the records back up to the first torn or stale one (a checksum that
+ * doesn't match, or an epoch older than the record before it, left over from an earlier run),
+ * and appending continues from there under a new epoch.
+ */
+public class VoteJournal {
+    public static final byte APPROVAL = 1;
+    public static final byte VOTE = 2;
+    private static final byte HEADER = 0x7F;
+    private static final byte VERSION = 1;
+    private static final int MAGIC = 0x564A524E; // "VJRN"
+
+    static final int RECORD_SIZE = 16;
+    private static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+    private static final VotingParties[] PARTIES = VotingParties.values();
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final MyArrayList<MappedByteBuffer> segments = new MyArrayList<>();
+    private final int epoch;
+    private final Recovery recovery;
+    private final long start; // where this run's records begin
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();    // something to force
+    private final Condition durableMoved = lock.newCondition(); // a force completed
+    private long written;     // end of the appended records
+    private long durable;     // end of the records known to be on disk
+    private boolean closed;
+    private IOException failure;
+
+    private final Thread flusher;
+    private long forces;
+    private final LatencyHistogram forceTimes = new LatencyHistogram();
+    private final LatencyHistogram commitTimes = new LatencyHistogram();
+
+    /**
+     * Open (or create) a journal, recovering the records already in it
+     * @param path Journal file
+     * @return VoteJournal
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public static VoteJournal open(Path path) throws IOException {
+        return new VoteJournal(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor for VoteJournal
+     * @param path Journal file
+     * @param segmentSize Bytes mapped at a time, a multiple of RECORD_SIZE
+     * @throws IOException if the file can't be opened or mapped
+     */
+    VoteJournal(Path path, int segmentSize) throws IOException {
+        this.segmentSize = segmentSize - segmentSize % RECORD_SIZE;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existing = channel.size();
+        for (long mapped = 0; mapped < Math.max(existing, 1); mapped += this.segmentSize) {
+            mapSegment();
+        }
+
+        this.recovery = recover();
+        this.epoch = recovery.lastEpoch + 1;
+        this.start = Math.max(RECORD_SIZE, recovery.end);
+        this.written = start;
+        this.durable = written;
+        writeRecord(0, HEADER, VERSION, 0, MAGIC); // the header carries the epoch of this run
+        segments.get(0).force(0, RECORD_SIZE);
+
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Append an approval, without waiting for it to be on disk
+     * @param stationId
+     * @param voterId
+     */
+    public void appendApproval(int stationId, int voterId) {
+        append(APPROVAL, (byte) -1, stationId, voterId);
+    }
+
+    /**
+     * Append a vote and wait until it is on disk (group commit)
+     * @param stationId
+     * @param party
+     * @throws IOException if the journal could not be written
+     */
+    public void commitVote(int stationId, VotingParties party) throws IOException {
+        long commitStart = System.nanoTime();
+        awaitDurable(append(VOTE, (byte) party.ordinal(), stationId, 0));
+        commitTimes.record(System.nanoTime() - commitStart);
+    }
+
+    /**
+     * Get the error that stopped the journal. Once set nothing more is made durable
+     * @return IOException, or null while the journal works
+     */
+    public IOException getFailure() {
+        lock.lock();
+        try {
+            return failure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get what was read back from the journal when it was opened
+     * @return Recovery
+     */
+    public Recovery getRecovery() {
+        return recovery;
+    }
+
+    /**
+     * Flush everything appended, stop the flusher and close the file
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Log how many records were written and what the forced writes cost
+     */
+    public void logStatistics() {
+        LatencyHistogram.Snapshot force = forceTimes.snapshot();
+        LatencyHistogram.Snapshot commit = commitTimes.snapshot();
+        long records;
+        lock.lock();
+        try {
+            records = (written - start) / RECORD_SIZE;
+        } finally {
+            lock.unlock();
+        }
+        Logger.getInstance("log.txt").log(String.format(
+                "Journal: %d records in %d forced writes (%.1f per force), force p99 %.3f ms max %.3f ms, vote commit p50 %.3f ms p99 %.3f ms",
+                records, forces, forces == 0 ? 0.0 : (double) records / forces,
+                force.getPercentile(99) / 1e6, force.getMax() / 1e6,
+                commit.getPercentile(50) / 1e6, commit.getPercentile(99) / 1e6));
+    }
+
+    private long append(byte type, byte party, int stationId, int voterId) {
+        lock.lock();
+        try {
+            if (closed) {
+                failure = failure != null ? failure : new IOException("Journal is closed");
+                return written;
+            }
+            long position = written;
+            if (position / segmentSize >= segments.size()) {
+                mapSegment();
+            }
+            writeRecord(position, type, party, stationId, voterId);
+            written = position + RECORD_SIZE;
+            return written;
+        } catch (IOException e) {
+            failure = e;
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitDurable(long end) throws IOException {
+        lock.lock();
+        try {
+            pending.signal();
+            while (durable < end && failure == null) {
+                durableMoved.awaitUninterruptibly(); // bounded by one or two forced writes
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flusher thread: force whatever was appended since the last force, then wake the committers
+     */
+    private void flushLoop() {
+        while (true) {
+            long from;
+            long to;
+            lock.lock();
+            try {
+                while (written == durable && !closed) {
+                    pending.awaitUninterruptibly();
+                }
+                if (written == durable) { // closed and everything is on disk
+                    return;
+                }
+                from = durable;
+                to = written;
+            } finally {
+                lock.unlock();
+            }
+
+            long forceStart = System.nanoTime();
+            IOException error = null;
+            try {
+                force(from, to);
+            } catch (IOException | RuntimeException e) {
+                error = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+            forceTimes.record(System.nanoTime() - forceStart);
+
+            lock.lock();
+            try {
+                forces++;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durable = to;
+                }
+                durableMoved.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void force(long from, long to) throws IOException {
+        for (long position = from - from % segmentSize; position < to; position += segmentSize) {
+            MappedByteBuffer segment;
+            lock.lock();
+            try {
+                segment = segments.get((int) (position / segmentSize));
+            } finally {
+                lock.unlock();
+            }
+            int start = (int) Math.max(0, from - position);
+            int end = (int) Math.min(segmentSize, to - position);
+            segment.force(start, end - start);
+        }
+    }
+
+    private void mapSegment() throws IOException {
+        long offset = (long) segments.size() * segmentSize;
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, segmentSize));
+    }
+
+    private void writeRecord(long position, byte type, byte party, int stationId, int voterId) {
+        MappedByteBuffer segment = segments.get((int) (position / segmentSize));
+        int at = (int) (position % segmentSize);
+        segment.put(at, type);
+        segment.put(at + 1, party);
+        segment.putShort(at + 2, (short) stationId);
+        segment.putInt(at + 4, voterId);
+        segment.putInt(at + 8, epoch);
+        segment.putInt(at + 12, checksum(type, party, stationId, voterId, epoch));
+    }
+
+    private static int checksum(byte type, byte party, int stationId, int voterId, int epoch) {
+        long z = ((long) (type & 0xFF) << 56) ^ ((long) (party & 0xFF) << 48) ^ ((long) (stationId & 0xFFFF) << 32)
+                ^ (voterId & 0xFFFFFFFFL) ^ ((long) epoch * 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (z ^ (z >>> 31)) | 1; // never 0, so a zeroed record never passes
+    }
+
+    /**
+     * Read the records back, stopping at the first torn or stale one
+     */
+    private Recovery recover() {
+        Recovery result = new Recovery();
+        MappedByteBuffer first = segments.get(0);
+        if (first.get(0) != HEADER || first.getInt(4) != MAGIC
+                || first.getInt(12) != checksum(HEADER, first.get(1), first.getShort(2), MAGIC, first.getInt(8))) {
+            return result; // new (or unreadable) journal
+        }
+        result.lastEpoch = first.getInt(8);
+        int lastEpoch = 0;
+        long capacity = (long) segments.size() * segmentSize;
+        long position = RECORD_SIZE;
+        for (; position < capacity; position += RECORD_SIZE) {
+            MappedByteBuffer segment = segments.get((int) (position / segmentSize));
+            int at = (int) (position % segmentSize);
+            byte type = segment.get(at);
+            byte party = segment.get(at + 1);
+            int stationId = segment.getShort(at + 2) & 0xFFFF;
+            int voterId = segment.getInt(at + 4);
+            int recordEpoch = segment.getInt(at + 8);
+            if ((type != APPROVAL && type != VOTE) || recordEpoch < lastEpoch || recordEpoch > result.lastEpoch
+                    || segment.getInt(at + 12) != checksum(type, party, stationId, voterId, recordEpoch)) {
+                break; // end of the journal, or a record that never made it to disk whole
+            }
+            lastEpoch = recordEpoch;
+            if (type == VOTE) {
+                if (party < 0 || party >= PARTIES.length) {
+                    break;
+                }
+                result.addVote(stationId, party);
+            } else {
+                result.addApproval(stationId, voterId);
+            }
+        }
+        result.end = position;
+        return result;
+    }
+
+    /**
+     * Recovery.
+     * Approvals and votes of every station read back from the journal.
+     */
+    public static final class Recovery {
+        private long[][] votes = new long[0][];
+        private IntHashSet[] approvals = new IntHashSet[0];
+        private BallotStore[] ballots = new BallotStore[0]; // votes in journal order
+        private long end;
+        private int lastEpoch;
+        private long numVotes;
+        private long numApprovals;
+
+        private Recovery() {
+        }
+
+        private void addVote(int stationId, int party) {
+            grow(stationId);
+            votes[stationId][party]++;
+            ballots[stationId].add(PARTIES[party]);
+            numVotes++;
+        }
+
+        private void addApproval(int stationId, int voterId) {
+            grow(stationId);
+            approvals[stationId].add(voterId);
+            numApprovals++;
+        }
+
+        private void grow(int stationId) {
+            if (stationId >= votes.length) {
+                long[][] biggerVotes = new long[stationId + 1][];
+                IntHashSet[] biggerApprovals = new IntHashSet[stationId + 1];
+                BallotStore[] biggerBallots = new BallotStore[stationId + 1];
+                System.arraycopy(votes, 0, biggerVotes, 0, votes.length);
+                System.arraycopy(approvals, 0, biggerApprovals, 0, approvals.length);
+                System.arraycopy(ballots, 0, biggerBallots, 0, ballots.length);
+                for (int i = votes.length; i <= stationId; i++) {
+                    biggerVotes[i] = new long[PARTIES.length];
+                    biggerApprovals[i] = new IntHashSet();
+                    biggerBallots[i] = new BallotStore();
+                }
+                votes = biggerVotes;
+                approvals = biggerApprovals;
+                ballots = biggerBallots;
+            }
+        }
+
+        /**
+         * Get the recovered votes of a station
+         * @param stationId
+         * @return ElectionResults
+         */
+        public ElectionResults getResults(int stationId) {
+            ElectionResults results = new ElectionResults();
+            if (stationId < votes.length) {
+                for (int i = 0; i < PARTIES.length; i++) {
+                    results.put(PARTIES[i], (int) votes[stationId][i]);
+                }
+            }
+            return results;
+        }
+
+        /**
+         * Get the recovered approved voter ids of a station
+         * @param stationId
+         * @return IntHashSet, empty if the station has none
+         */
+        public IntHashSet getApprovedIds(int stationId) {
+            return stationId < approvals.length ? approvals[stationId] : new IntHashSet();
+        }
+
+        /**
+         * Give a station back its approved voters, votes and ballots, before it opens
+         * @param station
+         */
+        public void restore(PollingStation station) {
+            int stationId = station.getStationId();
+            int[] ids = getApprovedIds(stationId).toArray();
+            for (int id : ids) {
+                station.restoreApprovedVoter(id);
+            }
+            if (stationId < votes.length) {
+                StripedVoteCounter counter = station.getVotingBooths().getBooth(0).getVotes();
+                for (int i = 0; i < PARTIES.length; i++) {
+                    counter.add(PARTIES[i], votes[stationId][i]);
+                }
+                station.getVotingBooths().getBallots().addAll(ballots[stationId]);
+            }
+        }
+
+        /**
+         * Get the number of recovered votes
+         * @return long
+         */
+        public long getNumVotes() {
+            return numVotes;
+        }
+
+        /**
+         * Get the number of recovered approvals
+         * @return long
+         */
+        public long getNumApprovals() {
+            return numApprovals;
+        }
+
+        /**
+         * Get the epoch (run) that wrote the journal last
+         * @return int, 0 for a new journal
+         */
+        public int getLastEpoch() {
+            return lastEpoch;
+        }
+    }
+}
@@ -1,4 +1,7 @@
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 /**
  * Voter is a class that represents a voter that is going to vote on the Election Day
@@ -8,25 +11,31 @@ public class Voter implements Runnable{
 
     private int id;
     private VotingParties party;
-    private static final Random random = new Random();
+    private SplittableRandom random; // derived from the run seed, see RunSeed
     private PollingStation pollingStation;
     private boolean isApproved;
     private boolean hasVoted;
+    private boolean voteFailed; // the booth couldn't count the vote (the journal failed)
     private boolean isRejectedByPollClerk;
     private ExitPoll exitPoll;
     private double respnseProbability; 
     private double lieProbability;
     private boolean wasInterviewed;
     private boolean isElectionDayDone;
+    private boolean resumedAtDesk; // put back in the desk queue from a checkpoint, already inside
+    private long deskQueuedAt; // StageTimings.now() when entering the desk queue, set and read under the desk lock
     private Logger logger;
+    private final ReentrantLock stateLock = new ReentrantLock(); // guards the flags set by clerk, booth and pollster
+    private final Condition stateChanged = stateLock.newCondition();
     
     public Voter(){}
 
     //Constructor
     public Voter(int id, PollingStation pollingStation, ExitPoll exitPoll, double responseProbability, double lieProbability){
         this.id = id;
-        this.party = chooseParty();
         this.pollingStation = pollingStation;   
+        this.random = RunSeed.forActor(RunSeed.Actor.VOTER, pollingStation == null ? 0 : pollingStation.getStationId(), id);
+        this.party = chooseParty();
         this.isApproved = false; 
         this.hasVoted = false;
         this.isRejectedByPollClerk = false;
@@ -40,7 +49,7 @@ public class Voter implements Runnable{
 
     //run method
     public void run(){
-        ElectionSimulationGUI gui = Main.getGUI();
+        SimulationObserver gui = Main.getGUI();
         gui.updateVoterState(id, "Waiting to enter");
 
         //System.out.printf("* Created Voter with ID: %s\n", id);
@@ -53,42 +62,35 @@ public class Voter implements Runnable{
                 break;
             }
             // Voters wait for polling station to open
-            synchronized(pollingStation){
-                while(!pollingStation.pollingStationIsOpen()){
-                    try{
-                        pollingStation.wait();
-                    } catch (InterruptedException e){
-                        logger.log("Voter "+ this.id +" interrupted while waiting for polling station to open");
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                }
+            try{
+                pollingStation.awaitOpen();
+            } catch (InterruptedException e){
+                logger.log("Voter "+ this.id +" interrupted while waiting for polling station to open");
+                Thread.currentThread().interrupt();
+                return;
             }
         
-            pollingStation.getDesk().enterDeskQueue(this, pollingStation);
+            boolean enteredDesk = resumedAtDesk || pollingStation.getDesk().enterDeskQueue(this, pollingStation);
+            resumedAtDesk = false;
             gui.updateVoterState(id, "Entering polling station");
-            if(!pollingStation.pollingStationIsOpen()){
+            if(!enteredDesk || !pollingStation.pollingStationIsOpen()){
                 //System.out.println("* Election Day is over, Voter %d leaving Desk " + this.getVoterId());
                 logger.log("* Election Day is over, Voter "+ this.getVoterId() +" leaving Desk ");
-                pollingStation.decrementCurrentVoters();
+                if(enteredDesk){ //only voters that were counted in leave the count
+                    pollingStation.decrementCurrentVoters();
+                }
                 gui.updateVoterState(id, "Left pollin station");
                 break;
             }
 
             // ID check by poll clerk
-            synchronized(this){
-                while(!isApproved){
-                    try{
-                        this.wait();
-                        if(this.isRejectedByPollClerk){ //for voters that entered but can't vote because the limit was reached
-                            break;
-                        }
-                    } catch (InterruptedException e){
-                        logger.log("Voter "+ this.id +" interrupted while waiting for approval");
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                }
+            try{
+                //rejection covers voters that entered but can't vote because the limit was reached
+                awaitState(() -> isApproved || isRejectedByPollClerk);
+            } catch (InterruptedException e){
+                logger.log("Voter "+ this.id +" interrupted while waiting for approval");
+                Thread.currentThread().interrupt();
+                return;
             }
 
             if(this.isRejectedByPollClerk){
@@ -96,10 +98,7 @@ public class Voter implements Runnable{
                 {
                     //System.out.println("* Poll station closed, Voter " + this.getVoterId() + " exits the polling station");
                     logger.log("* Poll station closed, Voter " + this.getVoterId() + " exits the polling station");
-                    pollingStation.decrementCurrentVoters();
-                    synchronized(pollingStation.getDesk().getPollClerk()){
-                        pollingStation.getDesk().getPollClerk().notifyAll();
-                    }
+                    pollingStation.decrementCurrentVoters(); //wakes the PollClerk when the station empties
                     gui.updateVoterState(id, "Rejected by poll clerk and left polling station");
                     break;
                 }
@@ -110,50 +109,46 @@ public class Voter implements Runnable{
             }
 
             //Approved -> go to voting booth
-            pollingStation.getVotingBooth().enterBoothQueue(this);
+            VotingBooth.Ticket ticket = pollingStation.getVotingBooths().enterBoothQueue(this); //least loaded booth
             gui.updateVoterState(id, "Approved and voting");
-            pollingStation.getVotingBooth().castVote(this); 
-
-            synchronized(this){
-                while(!hasVoted){
-                    try{
-                        this.wait();
-                    } catch (InterruptedException e){
-                        logger.log("Voter "+ this.id +" interrupted while waiting to vote");
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                }
+            pollingStation.getVotingBooths().castVote(this, ticket);
+
+            try{
+                awaitState(() -> hasVoted || voteFailed);
+            } catch (InterruptedException e){
+                logger.log("Voter "+ this.id +" interrupted while waiting to vote");
+                Thread.currentThread().interrupt();
+                return;
             }
 
-            pollingStation.getVotingBooth().exitBoothQueue();
-            pollingStation.decrementCurrentVoters();
-            gui.updateVoterState(id, "Voted and exiting");
-            synchronized(pollingStation){ //notify voters that are waiting for space to enter the polling station (enterDeskQueue)
-                pollingStation.notifyAll();
+            pollingStation.getVotingBooths().exitBoothQueue(ticket);
+            pollingStation.decrementCurrentVoters(); //lets a voter waiting for space in (enterDeskQueue)
+            if(this.voteFailed){ //the election is being stopped, no interview for a vote that didn't count
+                logger.log("* Vote of Voter " + this.getVoterId() + " failed, leaving the polling station");
+                pollingStation.voterFinished();
+                gui.updateVoterState(id, "Vote failed and left polling station");
+                break;
             }
+            gui.updateVoterState(id, "Voted and exiting");
 
             // Add voter to exit poll
-            synchronized(exitPoll){
-                exitPoll.addVoter(this);
+            long exitPollStart = StageTimings.now();
+            boolean queuedForPoll = exitPoll.addVoter(this);
+            if(!queuedForPoll){ //exit poll closed, no interview coming
+                this.setWasInterviewd();
             }
 
-            synchronized(this){
-                try {
-                    while(!this.wasInterviewed){
-                        wait(); //wait for pollster to signal that the potential interview is done
-                    }
-                } catch (InterruptedException e){
-                    logger.log("Voter "+ this.id +" interrupted while waiting for pollster");
-                    Thread.currentThread().interrupt();
-                    return;
-                }
+            try {
+                awaitState(() -> wasInterviewed); //wait for pollster to signal that the potential interview is done
+            } catch (InterruptedException e){
+                logger.log("Voter "+ this.id +" interrupted while waiting for pollster");
+                Thread.currentThread().interrupt();
+                return;
             }
-            
-            PollClerk tmp = pollingStation.getDesk().getPollClerk();
-            synchronized(tmp){ //notify the PollClerk for him to check if all voters have voted and the pollingStation is empty and ready for results
-                tmp.notify();
-            } 
+            if(queuedForPoll){
+                StageTimings.record(StageTimings.Stage.EXIT_POLL, exitPollStart);
+            }
+            pollingStation.voterFinished();
 
 
             this.rebornVoter();
@@ -173,6 +168,41 @@ public class Voter implements Runnable{
         return id;
     }
 
+    /**
+     * Setter for the time the voter entered the desk queue
+     * @param nanos StageTimings.now()
+     */
+    public void setDeskQueuedAt(long nanos){
+        this.deskQueuedAt = nanos;
+    }
+
+    /**
+     * Getter for the time the voter entered the desk queue
+     * @return StageTimings.now() when it entered
+     */
+    public long getDeskQueuedAt(){
+        return deskQueuedAt;
+    }
+
+    /**
+     * Start the voter in the desk queue, where it was when a checkpoint was taken
+     * (the polling station queues it before the voter thread starts)
+     * @param party The party it was going to vote for
+     */
+    public void resumeAtDesk(VotingParties party){
+        this.party = party;
+        this.resumedAtDesk = true;
+    }
+
+    /**
+     * Getter for the voter's random generator, only used by whoever the voter is busy with
+     * (its own thread, or the pollster while interviewing it)
+     * @return random
+     */
+    public SplittableRandom getRandom(){
+        return random;
+    }
+
     /**
      * Getter for voter's party
      * @return party
@@ -205,17 +235,46 @@ public class Voter implements Runnable{
     }
 
     /** 
-     * Setter for wasInterviewed
+     * Setter for wasInterviewed (the pollster is done with the voter), wakes the voter
      */
     public void setWasInterviewd(){
-        this.wasInterviewed = !this.wasInterviewed;
+        stateLock.lock();
+        try{
+            this.wasInterviewed = true;
+            stateChanged.signal();
+        } finally {
+            stateLock.unlock();
+        }
     }
 
     /** 
-     * Setter for isApproved
+     * Setter for isApproved, wakes the voter
      */
     public void setApproved(boolean isApproved){
-        this.isApproved = isApproved;
+        stateLock.lock();
+        try{
+            this.isApproved = isApproved;
+            stateChanged.signal();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until a state flag set by another actor becomes true
+     * (a lock condition instead of this object's monitor, so virtual threads aren't pinned)
+     * @param condition
+     * @throws InterruptedException
+     */
+    private void awaitState(BooleanSupplier condition) throws InterruptedException{
+        stateLock.lock();
+        try{
+            while(!condition.getAsBoolean()){
+                stateChanged.await();
+            }
+        } finally {
+            stateLock.unlock();
+        }
     }
 
     public String toString(){
@@ -226,7 +285,7 @@ public class Voter implements Runnable{
      * Vot
      * @return
      */
-    private static VotingParties chooseParty() {
+    private VotingParties chooseParty() {
         // define the weights for each party
         int[] weights = {50, 20, 20, 10}; // PPS will have the highest weight
         int totalWeight = 0;
@@ -262,14 +321,39 @@ public class Voter implements Runnable{
      * @param hasVoted
      */
     public void setHasVoted(boolean hasVoted){
-        this.hasVoted = hasVoted;
+        stateLock.lock();
+        try{
+            this.hasVoted = hasVoted;
+            stateChanged.signal();
+        } finally {
+            stateLock.unlock();
+        }
     }
 
     /**
-     * Setter for isRejectedByPollClerk, used for handling rejected voters
+     * The booth couldn't count the vote, wakes the voter so it leaves
+     */
+    public void setVoteFailed(){
+        stateLock.lock();
+        try{
+            this.voteFailed = true;
+            stateChanged.signal();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Setter for isRejectedByPollClerk, used for handling rejected voters, wakes the voter
      */
     public void setIsRejectedByPollClerk(){
-        this.isRejectedByPollClerk = true;
+        stateLock.lock();
+        try{
+            this.isRejectedByPollClerk = true;
+            stateChanged.signal();
+        } finally {
+            stateLock.unlock();
+        }
     }
 
     /**
@@ -277,7 +361,7 @@ public class Voter implements Runnable{
      */
     public void respondToPollster(){
         try {
-            Thread.sleep((int)(Math.random() * (10 - 5) + 5)* Main.getSpeedMultiplier()); 
+            SimulationClock.get().await(SimulationClock.serviceTime(5, 10, random.nextDouble())); 
         } catch (InterruptedException e) {
             logger.log("Voter " + this.id + " interrupted while responding to pollster");
             Thread.currentThread().interrupt();
@@ -306,22 +390,39 @@ public class Voter implements Runnable{
         double rebornProbability = 0.95;
 
         int prevId = this.id;
-        this.hasVoted = false;
-        this.isApproved = false;
-        this.isRejectedByPollClerk = false;
-        this.party = chooseParty();
-        this.setWasInterviewd();
-        if(Math.random() <= rebornProbability){
+        stateLock.lock();
+        try{ //reset, not toggle: a rejected voter was never interviewed
+            this.hasVoted = false;
+            this.voteFailed = false;
+            this.isApproved = false;
+            this.isRejectedByPollClerk = false;
+            this.wasInterviewed = false;
+        } finally {
+            stateLock.unlock();
+        }
+        if(random.nextDouble() <= rebornProbability){
             this.id = pollingStation.getVoterIdOffset();
+            this.random = RunSeed.forActor(RunSeed.Actor.VOTER, pollingStation.getStationId(), this.id); //choices follow the id, not the thread
+            this.party = chooseParty();
             //System.out.printf("* Voter %d reborn into %d\n", prevId, this.id);
             logger.log("* Voter "+ prevId +" reborn into "+ this.id);
-            ElectionSimulationGUI gui = Main.getGUI();
+            SimulationObserver gui = Main.getGUI();
             gui.updateVoterState(prevId, "Terminated");
             gui.updateVoterState(this.id, "Reborn and re-entering");
 
         }
-        else
+        else{
+            this.party = chooseParty();
             //System.out.printf("* Voter %d reborn false \n", this.id);
             logger.log("* Voter "+ this.id +" reborn false");
+            ElectionAggregator aggregator = pollingStation.getAggregator();
+            if(aggregator != null && aggregator.getNumStations() > 1){ //tries its luck at another station with the same id
+                int stationId = pollingStation.getStationId();
+                int otherId = 1 + (stationId + random.nextInt(aggregator.getNumStations() - 1)) % aggregator.getNumStations();
+                this.pollingStation = aggregator.getStation(otherId);
+                this.exitPoll = aggregator.getExitPoll(otherId);
+                logger.log("* Voter "+ this.id +" goes to station "+ otherId +" to vote again");
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * VoterStateBoard.java
+ * This class holds the latest state of every voter for the GUI. Actors write a small state code
+ * per voter id with a single atomic store, and the GUI reads a snapshot of the board once per frame,
+ * so a state change costs no event on the Swing thread no matter how many voters there are.
+ * The board is split in pages that are only allocated once an id in them is used, so it can grow
+ * while voters are reborn with new ids.
+ */
+public class VoterStateBoard {
+    public static final int UNSEEN = 0;
+    public static final int WAITING = 1;
+    public static final int APPROVED = 2;
+    public static final int VOTED = 3;
+    public static final int REJECTED = 4;
+    public static final int REBORN = 5;
+    public static final int LEFT = 6;
+    public static final int TERMINATED = 7;
+    public static final int NUM_STATES = 8;
+
+    private static final String[] STATE_NAMES = {
+        "", "Waiting", "Approved and voting", "Voted", "Rejected by poll clerk", "Reborn", "Left polling station", "Terminated"
+    };
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile AtomicIntegerArray[] pages = new AtomicIntegerArray[16];
+    private final ReentrantLock growLock = new ReentrantLock();
+    private final AtomicInteger maxId = new AtomicInteger(-1);
+    private final AtomicInteger version = new AtomicInteger(); // bumped by every change, lets the GUI skip idle frames
+
+    /**
+     * Convert a state reported by a voter to its code
+     * @param state
+     * @return int
+     */
+    public static int codeOf(String state) {
+        return switch (state) {
+            case "Waiting to enter", "Entering polling station" -> WAITING;
+            case "Approved and voting" -> APPROVED;
+            case "Voted and exiting" -> VOTED;
+            case "Rejected by poll clerk and left polling station" -> REJECTED;
+            case "Voter Reborn", "Reborn and re-entering" -> REBORN;
+            case "Left pollin station" -> LEFT;
+            case "Terminated" -> TERMINATED;
+            default -> UNSEEN;
+        };
+    }
+
+    /**
+     * Get the name of a state code
+     * @param code
+     * @return String
+     */
+    public static String nameOf(int code) {
+        return code >= 0 && code < NUM_STATES ? STATE_NAMES[code] : "";
+    }
+
+    /**
+     * Set the state of a voter, callable from any thread
+     * @param voterId
+     * @param code
+     */
+    public void set(int voterId, int code) {
+        if (voterId < 0) {
+            return;
+        }
+        page(voterId >>> PAGE_BITS).set(voterId & PAGE_MASK, code);
+        int max;
+        while ((max = maxId.get()) < voterId && !maxId.compareAndSet(max, voterId)) {
+            // another voter raised it first, retry
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Get the state of a voter
+     * @param voterId
+     * @return int, UNSEEN if the voter never reported
+     */
+    public int get(int voterId) {
+        if (voterId < 0) {
+            return UNSEEN;
+        }
+        AtomicIntegerArray[] current = pages;
+        int p = voterId >>> PAGE_BITS;
+        if (p >= current.length || current[p] == null) {
+            return UNSEEN;
+        }
+        return current[p].get(voterId & PAGE_MASK);
+    }
+
+    /**
+     * Copy the states of a range of voters
+     * @param fromId First voter id
+     * @param out Receives the states of fromId, fromId + 1, ...
+     * @param length Number of voters to copy
+     */
+    public void snapshot(int fromId, int[] out, int length) {
+        AtomicIntegerArray[] current = pages;
+        for (int i = 0; i < length; i++) {
+            int id = fromId + i;
+            int p = id >>> PAGE_BITS;
+            AtomicIntegerArray page = p < current.length ? current[p] : null;
+            out[i] = page == null ? UNSEEN : page.get(id & PAGE_MASK);
+        }
+    }
+
+    /**
+     * Get the largest voter id seen so far
+     * @return int, -1 if no voter reported yet
+     */
+    public int getMaxId() {
+        return maxId.get();
+    }
+
+    /**
+     * Get a number that changes whenever a state changes
+     * @return int
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    private AtomicIntegerArray page(int p) {
+        AtomicIntegerArray[] current = pages;
+        if (p < current.length && current[p] != null) {
+            return current[p];
+        }
+        growLock.lock();
+        try {
+            current = pages;
+            if (p >= current.length) {
+                AtomicIntegerArray[] bigger = new AtomicIntegerArray[Math.max(p + 1, current.length * 2)];
+                System.arraycopy(current, 0, bigger, 0, current.length);
+                current = bigger;
+            }
+            if (current[p] == null) {
+                current[p] = new AtomicIntegerArray(PAGE_SIZE);
+            }
+            pages = current; // volatile write publishes the new page
+            return current[p];
+        } finally {
+            growLock.unlock();
+        }
+    }
+}
@@ -1,89 +1,316 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * VotingBooth.java
  * This class represents the voting booth in the election simulation.
  * It manages a queue of voters who are waiting to cast their votes.
  * The voting booth ensures that voters cast their votes in a thread-safe manner.
+ * Each queued voter holds a ticket with its own condition, and the booth only wakes
+ * the holder of the next ticket when the current voter leaves (strict FIFO handoff).
+ * When booths are pooled, an idle booth can steal the last waiting ticket of another booth.
  */
 public class VotingBooth {
-    private final MyArrayList<VotingParties> votes;
-    private final GenericFIFO<Voter> boothQueue;
+    private final int boothId;
+    private final StripedVoteCounter votes;
+    private final BallotStore ballots;
+    private final GenericFIFO<Ticket> boothQueue;
+    private final ReentrantLock lock;
+    private final LongAdder wakeups; // times a queued voter was woken up
+    private volatile int queueDepth; // boothQueue.size(), readable without the lock
+    private int maxQueueDepth;
+    private long busyNanos;          // time the booth was occupied by a voting voter
+    private long busySince;
+    private final long createdAt;
+    private VoteJournal journal; // null when votes aren't journaled
+    private int stationId;
     private Logger logger;
 
+    /**
+     * Ticket.
+     * A voter's place in a booth queue. The voter waits on its own condition until its
+     * ticket reaches the front of the queue. A ticket stolen by another booth moves there.
+     */
+    public static final class Ticket {
+        private final Voter voter;
+        private final long queuedAt; // StageTimings.now() when the voter joined the queue
+        private volatile VotingBooth booth;
+        private Condition turn;
+
+        private Ticket(Voter voter, VotingBooth booth) {
+            this.voter = voter;
+            this.queuedAt = StageTimings.now();
+            this.booth = booth;
+            this.turn = booth.lock.newCondition();
+        }
+
+        public Voter getVoter() {
+            return voter;
+        }
+
+        /**
+         * Get the booth the ticket is currently queued at
+         * @return VotingBooth
+         */
+        public VotingBooth getBooth() {
+            return booth;
+        }
+    }
+
     /**
      * Constructor for VotingBooth.
      */
     public VotingBooth() {
-        this.votes = new MyArrayList<>();
+        this(1, new StripedVoteCounter());
+    }
+
+    /**
+     * Constructor for VotingBooth.
+     * @param votes Vote counter to record into, may be shared with other booths.
+     */
+    public VotingBooth(StripedVoteCounter votes) {
+        this(1, votes);
+    }
+
+    /**
+     * Constructor for VotingBooth.
+     * @param boothId Id of the booth in its pool, also its lock order.
+     * @param votes Vote counter to record into, may be shared with other booths.
+     */
+    public VotingBooth(int boothId, StripedVoteCounter votes) {
+        this(boothId, votes, new BallotStore());
+    }
+
+    /**
+     * Constructor for VotingBooth.
+     * @param boothId Id of the booth in its pool, also its lock order.
+     * @param votes Vote counter to record into, may be shared with other booths.
+     * @param ballots Ballot store to append the ballots to, may be shared with other booths.
+     */
+    public VotingBooth(int boothId, StripedVoteCounter votes, BallotStore ballots) {
+        this.boothId = boothId;
+        this.votes = votes;
+        this.ballots = ballots;
         this.boothQueue = new GenericFIFO<>();
+        this.lock = new ReentrantLock();
+        this.wakeups = new LongAdder();
+        this.createdAt = System.nanoTime();
         this.logger = Logger.getInstance("log.txt");
     }
 
     /**
      * Cast a vote for a voter.
      * This method ensures that voters cast their votes in the order they entered the queue.
+     * The booth lock is only held while waiting for the turn, the front ticket holder
+     * has the booth to itself until it calls exitBoothQueue.
      * @param voter The voter casting the vote.
+     * @param ticket The ticket the voter got when entering the queue.
+     * @return False if the ticket was moved to another booth before its turn came (vote there), true otherwise.
      */
-    public synchronized void castVote(Voter voter) {
-
-        while(boothQueue.front() != voter){
-            try {
-                wait(); //wait for turn
-
-            } catch (InterruptedException e) {
-                logger.log("Voter " + voter.getVoterId() + " was interrupted while waiting for turn to vote");
-                Thread.currentThread().interrupt();
-                return;
+    public boolean castVote(Voter voter, Ticket ticket) {
+        lock.lock();
+        try {
+            while(ticket.booth == this && boothQueue.front() != ticket){
+                ticket.turn.await(); //wait for turn, only this voter is signalled
+                wakeups.increment();
             }
-
+            if(ticket.booth != this){
+                return false;
+            }
+            busySince = System.nanoTime();
+            StageTimings.record(StageTimings.Stage.BOOTH_QUEUE, ticket.queuedAt); //also counts the wait at a booth it was stolen from
+        } catch (InterruptedException e) {
+            logger.log("Voter " + voter.getVoterId() + " was interrupted while waiting for turn to vote");
+            Thread.currentThread().interrupt();
+            return true;
+        } finally {
+            lock.unlock();
         }
 
         // time to vote (0-15 ms)
+        long voteStart = StageTimings.now();
         try {
-            Thread.sleep((int)(Math.random() * 15) * Main.getSpeedMultiplier());
+            SimulationClock.get().await(SimulationClock.serviceTime(0, 15, voter.getRandom().nextDouble())); //the voter's own generator
         } catch (InterruptedException e) {
             logger.log("Voter " + voter.getVoterId() + " was interrupted while voting");
             Thread.currentThread().interrupt();
-            return;
+            return true;
         }
 
-        // record vote
-        votes.add(voter.getParty());
+        // record vote, on disk first when journaled (write-ahead)
+        if (journal != null) {
+            try {
+                journal.commitVote(stationId, voter.getParty());
+            } catch (IOException e) {
+                logger.log("! Vote of Voter " + voter.getVoterId() + " was not counted, it could not be journaled");
+                Main.stopOnJournalFailure(e); // a vote only counts once it is durable, so no vote can count anymore
+                voter.setVoteFailed(); //the voter leaves the booth and the station without a vote
+                return true;
+            }
+        }
+        votes.record(voter.getParty());
+        ballots.add(voter.getParty());
+        StageTimings.record(StageTimings.Stage.CAST_VOTE, voteStart);
         //System.out.println("Voter " + voter.getVoterId() + " voted anonymously");
         logger.log("Voter " + voter.getVoterId() + " voted anonymously");
-        
+
         voter.setHasVoted(true);
-        
-        synchronized(voter){
-            voter.notify();
-        }
         //pollingStation.voterFinished();, looks like garbage
-
+        return true;
     }
-    
+
     /**
      * Add a voter to the voting booth queue.
      * @param voter The voter to be added to the queue.
+     * @return The voter's ticket, to be handed to castVote.
      */
-    public synchronized void enterBoothQueue(Voter voter){
-        boothQueue.enQueue(voter);
-        notifyAll();
+    public Ticket enterBoothQueue(Voter voter){
+        lock.lock();
+        try {
+            Ticket ticket = new Ticket(voter, this);
+            boothQueue.enQueue(ticket);
+            queueDepth = boothQueue.size();
+            maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Remove a voter from the voting booth queue.
+     * Remove a voter from the voting booth queue, handing the booth to the next ticket.
      * @return The voter removed from the queue.
      */
-    public synchronized Voter exitBoothQueue(){   
-        Voter v = boothQueue.deQueue();
-        notifyAll();
-        return v;
+    public Voter exitBoothQueue(){
+        lock.lock();
+        try {
+            Ticket ticket = boothQueue.deQueue();
+            if(busySince != 0){
+                busyNanos += System.nanoTime() - busySince;
+                busySince = 0;
+            }
+            queueDepth = boothQueue.size();
+            if(!boothQueue.isEmpty()){
+                boothQueue.front().turn.signal(); //wake only the next voter in line
+            }
+            return ticket == null ? null : ticket.voter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move the last waiting ticket of another booth to this booth, if this booth is idle.
+     * The front ticket of the victim is never taken (it may be voting).
+     * @param victim The booth to steal from.
+     * @return True if a ticket was moved.
+     */
+    public boolean stealFrom(VotingBooth victim){
+        if(victim == this){
+            return false;
+        }
+        VotingBooth first = boothId < victim.boothId ? this : victim; // fixed lock order between booths
+        VotingBooth second = first == this ? victim : this;
+        first.lock.lock();
+        second.lock.lock();
+        try {
+            if(!boothQueue.isEmpty() || victim.boothQueue.size() < 2){
+                return false;
+            }
+            Ticket ticket = victim.boothQueue.deQueueLast();
+            victim.queueDepth = victim.boothQueue.size();
+            Condition oldTurn = ticket.turn;
+            ticket.booth = this;
+            ticket.turn = lock.newCondition();
+            boothQueue.enQueue(ticket);
+            queueDepth = boothQueue.size();
+            maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+            oldTurn.signal(); // the voter wakes at the victim, sees the move and comes here
+            logger.log("Booth " + boothId + " took Voter " + ticket.voter.getVoterId() + " from booth " + victim.boothId);
+            return true;
+        } finally {
+            second.lock.unlock();
+            first.lock.unlock();
+        }
     }
 
     /**
-     * Get the list of votes cast in the voting booth.
-     * @return The list of votes.
+     * Get the number of voters waiting in or using the booth.
+     * @return Queue depth.
      */
-    public synchronized MyArrayList<VotingParties> getVotes() {
+    public int getQueueDepth(){
+        return queueDepth;
+    }
+
+    /**
+     * Get the largest queue depth seen so far.
+     * @return Max queue depth.
+     */
+    public int getMaxQueueDepth(){
+        lock.lock();
+        try {
+            return maxQueueDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the fraction of time since the booth was created that a voter was voting in it.
+     * @return Utilization between 0 and 1.
+     */
+    public double getUtilization(){
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            long busy = busyNanos + (busySince != 0 ? now - busySince : 0);
+            return now == createdAt ? 0 : (double) busy / (now - createdAt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of times a queued voter was woken up while waiting for its turn.
+     * @return Wakeup count.
+     */
+    public long getWakeups(){
+        return wakeups.sum();
+    }
+
+    /**
+     * Journal the votes cast in this booth (write-ahead, before they are counted).
+     * @param journal The journal, null for none.
+     * @param stationId Station the booth belongs to.
+     */
+    public void setJournal(VoteJournal journal, int stationId){
+        this.journal = journal;
+        this.stationId = stationId;
+    }
+
+    /**
+     * Get the id of the booth.
+     * @return Booth id.
+     */
+    public int getBoothId(){
+        return boothId;
+    }
+
+    /**
+     * Get the counter of votes cast in the voting booth.
+     * @return The vote counter.
+     */
+    public StripedVoteCounter getVotes() {
         return votes;
     }
+
+    /**
+     * Get the store the ballots cast in the voting booth are appended to.
+     * @return The ballot store.
+     */
+    public BallotStore getBallots() {
+        return ballots;
+    }
 }
@@ -0,0 +1,181 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * VotingBoothPool.java
+ * This class represents the set of voting booths of a polling station.
+ * Approved voters are dispatched to the booth with the shortest queue, and a booth that
+ * goes idle steals the last waiting voter of the busiest booth. Each booth counts its own
+ * votes as they are cast; LiveTally reads them while voting goes on and at the end of the election.
+ * The booths append their ballots to one BallotStore, the station's ballots in the order they were cast.
+ */
+public class VotingBoothPool {
+    private final VotingBooth[] booths;
+    private final BallotStore ballots;
+    private final AtomicInteger nextStart; // rotates the scan so ties don't all go to booth 1
+    private Logger logger;
+
+    /**
+     * Constructor for VotingBoothPool.
+     * @param numBooths Number of booths.
+     */
+    public VotingBoothPool(int numBooths) {
+        this.booths = new VotingBooth[Math.max(1, numBooths)];
+        this.ballots = new BallotStore();
+        for (int i = 0; i < booths.length; i++) {
+            booths[i] = new VotingBooth(i + 1, new StripedVoteCounter(), ballots);
+        }
+        this.nextStart = new AtomicInteger();
+        this.logger = Logger.getInstance("log.txt");
+    }
+
+    /**
+     * Add a voter to the queue of the least loaded booth.
+     * @param voter The voter to be added.
+     * @return The voter's ticket.
+     */
+    public VotingBooth.Ticket enterBoothQueue(Voter voter) {
+        int start = Math.floorMod(nextStart.getAndIncrement(), booths.length);
+        VotingBooth best = booths[start];
+        for (int i = 1; i < booths.length && best.getQueueDepth() > 0; i++) {
+            VotingBooth booth = booths[(start + i) % booths.length];
+            if (booth.getQueueDepth() < best.getQueueDepth()) {
+                best = booth;
+            }
+        }
+        return best.enterBoothQueue(voter);
+    }
+
+    /**
+     * Cast a vote at the booth holding the voter's ticket, following the ticket if it is stolen.
+     * @param voter The voter casting the vote.
+     * @param ticket The voter's ticket.
+     */
+    public void castVote(Voter voter, VotingBooth.Ticket ticket) {
+        while (!ticket.getBooth().castVote(voter, ticket)) {
+            // moved to an idle booth, wait for the turn there
+        }
+    }
+
+    /**
+     * Remove a voter from its booth, and let the booth steal work if it became idle.
+     * @param ticket The voter's ticket.
+     * @return The voter removed from the queue.
+     */
+    public Voter exitBoothQueue(VotingBooth.Ticket ticket) {
+        VotingBooth booth = ticket.getBooth();
+        Voter voter = booth.exitBoothQueue();
+        if (booths.length > 1 && booth.getQueueDepth() == 0) {
+            steal(booth);
+        }
+        return voter;
+    }
+
+    /**
+     * Move a waiting voter from the busiest booth to an idle one.
+     * @param idle The idle booth.
+     */
+    private void steal(VotingBooth idle) {
+        VotingBooth busiest = null;
+        for (VotingBooth booth : booths) {
+            if (booth != idle && booth.getQueueDepth() >= 2 && (busiest == null || booth.getQueueDepth() > busiest.getQueueDepth())) {
+                busiest = booth;
+            }
+        }
+        if (busiest != null) {
+            idle.stealFrom(busiest);
+        }
+    }
+
+    /**
+     * Add the votes of every booth to the election results.
+     * @param electionResults The results to merge into.
+     */
+    public void mergeVotes(ElectionResults electionResults) {
+        for (VotingBooth booth : booths) {
+            electionResults.processVotes(booth.getVotes());
+        }
+    }
+
+    /**
+     * Journal the votes of every booth.
+     * @param journal The journal, null for none.
+     * @param stationId Station the booths belong to.
+     */
+    public void setJournal(VoteJournal journal, int stationId) {
+        for (VotingBooth booth : booths) {
+            booth.setJournal(journal, stationId);
+        }
+    }
+
+    /**
+     * Get the vote counter of every booth.
+     * @return Counters, indexed by booth.
+     */
+    public StripedVoteCounter[] getVoteCounters() {
+        StripedVoteCounter[] counters = new StripedVoteCounter[booths.length];
+        for (int i = 0; i < booths.length; i++) {
+            counters[i] = booths[i].getVotes();
+        }
+        return counters;
+    }
+
+    /**
+     * Get the ballots cast in every booth, in the order they were cast.
+     * @return The ballot store.
+     */
+    public BallotStore getBallots() {
+        return ballots;
+    }
+
+    /**
+     * Get the current queue depth of every booth.
+     * @return Queue depths, indexed by booth.
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[booths.length];
+        for (int i = 0; i < booths.length; i++) {
+            depths[i] = booths[i].getQueueDepth();
+        }
+        return depths;
+    }
+
+    /**
+     * Get the utilization of every booth.
+     * @return Utilizations between 0 and 1, indexed by booth.
+     */
+    public double[] getUtilizations() {
+        double[] utilizations = new double[booths.length];
+        for (int i = 0; i < booths.length; i++) {
+            utilizations[i] = booths[i].getUtilization();
+        }
+        return utilizations;
+    }
+
+    /**
+     * Log votes, utilization and queue depths of every booth.
+     */
+    public void logStatistics() {
+        for (VotingBooth booth : booths) {
+            logger.log(String.format("Booth %d: %d votes, utilization %.1f%%, max queue depth %d",
+                    booth.getBoothId(), booth.getVotes().total(), booth.getUtilization() * 100, booth.getMaxQueueDepth()));
+        }
+        logger.log(String.format("Ballot store: %d ballots, %d bits each, %d KB", ballots.size(), BallotStore.BITS, ballots.getAllocatedBytes() / 1024));
+    }
+
+    /**
+     * Get a booth by index.
+     * @param index
+     * @return VotingBooth
+     */
+    public VotingBooth getBooth(int index) {
+        return booths[index];
+    }
+
+    /**
+     * Get the number of booths.
+     * @return int
+     */
+    public int size() {
+        return booths.length;
+    }
+}
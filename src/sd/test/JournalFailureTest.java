@@ -0,0 +1,68 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JournalFailureTest.java
+ * Fails the vote journal in the middle of a headless election, in a JVM of its own since Main
+ * exits, and checks that the election is wound up: the process exits with status 1 and the
+ * votes that couldn't be journaled aren't counted.
+ */
+public class JournalFailureTest {
+    private static final long EXIT_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Driver.
+     * Runs Main and closes its journal once voting is under way, so the next votes can't be made durable.
+     */
+    public static final class Driver {
+        public static void main(String[] args) throws Exception {
+            Thread failer = new Thread(() -> {
+                try {
+                    while (Main.getJournal() == null) {
+                        Thread.sleep(10);
+                    }
+                    Thread.sleep(500); // voting is under way
+                    Main.getJournal().close();
+                } catch (InterruptedException | IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            failer.setDaemon(true);
+            failer.start();
+            Main.main(args);
+        }
+    }
+
+    @Test
+    public void electionStopsWhenTheJournalFails(@TempDir Path dir) throws Exception {
+        Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                Driver.class.getName(),
+                "--headless", "--voters", "50", "--capacity", "10", "--limit", "1000000",
+                "--clock", "zero", "--journal", dir.resolve("votes.journal").toString())
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(new File(dir.toFile(), "out.txt"))
+                .start();
+
+        boolean exited = process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!exited) {
+            process.destroyForcibly();
+        }
+        assertTrue(exited, "the election didn't wind up after the journal failed");
+        assertEquals(1, process.exitValue());
+        String log = Files.readString(dir.resolve("log.txt"));
+        assertTrue(log.contains("! Journal failed, stopping the election"), "journal failure not logged");
+        assertTrue(log.contains("was not counted, it could not be journaled"), "no vote was refused");
+    }
+}